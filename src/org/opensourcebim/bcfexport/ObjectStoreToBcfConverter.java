@@ -1,7 +1,5 @@
 package org.opensourcebim.bcfexport;
 
-import java.util.Optional;
-
 import org.bimserver.bimbots.BimBotsInput;
 import org.opensourcebim.bcf.BcfFile;
 import org.opensourcebim.bcf.TopicFolder;
@@ -12,14 +10,18 @@ import org.opensourcebim.bcf.visinfo.ComponentSelection;
 import org.opensourcebim.bcf.visinfo.Components;
 import org.opensourcebim.bcf.visinfo.VisualizationInfo;
 import org.opensourcebim.ifcanalysis.GuidCollection;
-import org.opensourcebim.ifccollection.MpgObject;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgObjectStore;
 
 public class ObjectStoreToBcfConverter {
-	MpgObjectStore store;
+	MpgFrozenStore store;
 	BcfExportSettings settings;
 
 	public ObjectStoreToBcfConverter(MpgObjectStore store, BimBotsInput botInput) {
+		this(store.freeze(), botInput);
+	}
+
+	public ObjectStoreToBcfConverter(MpgFrozenStore store, BimBotsInput botInput) {
 		this.store = store;
 
 		settings = BcfExportSettings.getInstance();
@@ -57,7 +59,7 @@ public class ObjectStoreToBcfConverter {
 		return file;
 	}
 
-	private TopicFolder createTopicFolderFromGuidCollection(GuidCollection coll, MpgObjectStore store) {
+	private TopicFolder createTopicFolderFromGuidCollection(GuidCollection coll, MpgFrozenStore store) {
 		TopicFolder folder = new TopicFolder();
 		Markup markup = folder.getMarkup();
 
@@ -70,9 +72,9 @@ public class ObjectStoreToBcfConverter {
 			comp.setIfcGuid(guid);
 
 			Long oId = (long) -1;
-			Optional<MpgObject> obj = store.getObjectByGuid(guid);
-			if (obj.isPresent()) {
-				oId = obj.get().getObjectId();
+			int obj = store.indexOf(guid);
+			if (obj >= 0) {
+				oId = store.getObjectId(obj);
 			}
 
 			comp.setAuthoringToolId(oId.toString());
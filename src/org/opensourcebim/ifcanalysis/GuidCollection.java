@@ -5,6 +5,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgObject;
 import org.opensourcebim.ifccollection.MpgObjectStore;
 
@@ -22,6 +24,8 @@ public class GuidCollection {
 	
 	@JsonIgnore
 	private MpgObjectStore store;
+	@JsonIgnore
+	private MpgFrozenStore frozenStore;
 	
 	public GuidCollection(MpgObjectStore store, String description) {
 		guids = new HashSet<String>();
@@ -29,6 +33,12 @@ public class GuidCollection {
 		this.setDescription(description);
 	}
 	
+	public GuidCollection(MpgFrozenStore store, String description) {
+		guids = new HashSet<String>();
+		this.frozenStore = store;
+		this.setDescription(description);
+	}
+	
 	public void setCollection(List<String> guids){
 		this.guids = new HashSet<String>(guids);
 		update();
@@ -77,6 +87,10 @@ public class GuidCollection {
 	}
 	
 	private void update() {
+		if (frozenStore != null) {
+			updateFromSnapshot();
+			return;
+		}
 		List<MpgObject> selectedObjects = store.getObjectsByGuids(guids);
 		types = selectedObjects.stream().map(o -> o.getObjectType()).distinct()
 				.collect(Collectors.toList());
@@ -87,4 +101,17 @@ public class GuidCollection {
 		numberOfComposed = selectedObjects.stream().filter(o -> store.getChildren(o.getGlobalId()).count() > 0).count();
 		numberOfComponents = selectedObjects.stream().filter(o -> o.getParentId() != null && o.getParentId() != "").count();
 	}
+	
+	private void updateFromSnapshot() {
+		List<Integer> selectedObjects = frozenStore.indicesOf(guids);
+		types = selectedObjects.stream().map(i -> frozenStore.getObjectType(i)).distinct()
+				.collect(Collectors.toList());
+		materials = selectedObjects.stream().flatMap(i -> frozenStore.getMaterialNamesBySource(i, null).stream())
+				.distinct().collect(Collectors.toList());
+		names = selectedObjects.stream().map(i -> frozenStore.getObjectName(i)).distinct()
+				.collect(Collectors.toList());
+		numberOfComposed = selectedObjects.stream().filter(i -> frozenStore.getChildCount(i) > 0).count();
+		numberOfComponents = selectedObjects.stream()
+				.filter(i -> !StringUtils.isEmpty(frozenStore.getParentId(i))).count();
+	}
 }
@@ -3,11 +3,10 @@ package org.opensourcebim.ifcanalysis;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.emf.common.util.BasicEList;
-import org.opensourcebim.ifccollection.MpgObject;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgObjectStore;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -20,44 +19,46 @@ public class GuidDataSet {
 	private HashMap<String, GuidPropertyRecord> records;
 		
 	public GuidDataSet(MpgObjectStore store) {
+		this(store.freeze());
+	}
+	
+	public GuidDataSet(MpgFrozenStore store) {
 		
 		records = new HashMap<String, GuidPropertyRecord>();
 		columnDefinitions = new HashSet<String>();
 		
-		for (MpgObject obj : store.getObjects()) {
-			String guid = obj.getGlobalId();
+		for (int obj = 0; obj < store.getObjectCount(); obj++) {
+			String guid = store.getGlobalId(obj);
 			if(StringUtils.isBlank(guid)) {
 				continue;
 			}
 
 			this.addRecord(guid);
-			this.setRecordValue(guid, "name", obj.getObjectName());
-			this.setRecordValue(guid, "productType", obj.getObjectType());
-			this.setRecordValue(guid, "volume", obj.getGeometry().getVolume());
-			this.setRecordValue(guid, "directMats", obj.getMaterialNamesBySource("direct"));
-			this.setRecordValue(guid, "layerMats", obj.getMaterialNamesBySource("layer"));
-			this.setRecordValue(guid, "typeMats", obj.getMaterialNamesBySource("type"));
-			this.setRecordValue(guid, "PsetMats", obj.getMaterialNamesBySource("P_Set"));
+			this.setRecordValue(guid, "name", store.getObjectName(obj));
+			this.setRecordValue(guid, "productType", store.getObjectType(obj));
+			this.setRecordValue(guid, "volume", store.getVolume(obj));
+			this.setRecordValue(guid, "directMats", store.getMaterialNamesBySource(obj, "direct"));
+			this.setRecordValue(guid, "layerMats", store.getMaterialNamesBySource(obj, "layer"));
+			this.setRecordValue(guid, "typeMats", store.getMaterialNamesBySource(obj, "type"));
+			this.setRecordValue(guid, "PsetMats", store.getMaterialNamesBySource(obj, "P_Set"));
 			this.setRecordValue(guid, "isAssembly",
-					obj.getObjectType().equals("ElementAssembly"));
-			this.setRecordValue(guid, "IsDecomposedById", obj.getParentId());
-			this.setRecordValue(guid, "hasDecomposedProducts", store.getChildren(obj.getGlobalId()).count() > 0);
+					store.getObjectType(obj).equals("ElementAssembly"));
+			this.setRecordValue(guid, "IsDecomposedById", store.getParentId(obj));
+			this.setRecordValue(guid, "hasDecomposedProducts", store.getChildCount(obj) > 0);
 			
 			Boolean isAssembly = false;
 			List<String> parentMats = new BasicEList<String>();
-			if (!obj.getParentId().isEmpty()) {
-				Optional<MpgObject> parent = store.getObjectByGuid(obj.getParentId());
-				if (parent.isPresent()) {
-					parentMats = parent.get().getMaterialNamesBySource(null);
+			int parent = store.indexOf(store.getParentId(obj));
+			if (parent >= 0) {
+				parentMats = store.getMaterialNamesBySource(parent, null);
 
-					if (parent.get().getObjectType().equals("ElementAssembly")) {
-						isAssembly = true;
-					}
+				if (store.getObjectType(parent).equals("ElementAssembly")) {
+					isAssembly = true;
 				}
 			}
 			this.setRecordValue(guid, "IsDecomposedByMats", parentMats);
 			this.setRecordValue(guid, "isPartOfAssembly", isAssembly);
-			this.setRecordValue(guid, "allMaterials", obj.getMaterialNamesBySource(null));
+			this.setRecordValue(guid, "allMaterials", store.getMaterialNamesBySource(obj, null));
 		}
 
 	}
@@ -66,6 +66,14 @@ public class MaterialSource {
 		this.mapName = card.getDescription();
 	}
 	
+	/**
+	 * restore a mapping of which the product card is not available
+	 */
+	void setMapping(Integer mapId, String mapName) {
+		this.mapId = mapId;
+		this.mapName = mapName;
+	}
+
 	public void clearMap() {
 		this.mapId = -1;
 		this.mapName = "";
@@ -0,0 +1,49 @@
+package org.opensourcebim.ifccollection;
+
+/**
+ * Consumer of the results of an object collection. The collector pushes every
+ * space and object to the sink as soon as it is collected, so consumers can
+ * process and release objects while the collection is still running. Objects
+ * are pushed in model order. The parent relation of an object is pushed after
+ * the object itself. A parallel collection buffers a window of collected
+ * objects before they are pushed.
+ * 
+ * The services collect into an MpgObjectStoreSink, as mapping, calculation and
+ * the decomposition columns of the dataset and BCF outputs need the complete
+ * set of objects.
+ */
+public interface MpgCollectionSink {
+
+	/**
+	 * called once before any space or object is collected
+	 * 
+	 * @param projectId  project id of the model or null if it is unknown
+	 * @param revisionId revision id of the model or null if it is unknown
+	 */
+	default void collectionStarted(Long projectId, Long revisionId) {
+	}
+
+	default void spaceCollected(MpgSpace space) {
+	}
+
+	/**
+	 * @param elementId id of the element that should be created for the object
+	 * @param object    the collected object
+	 */
+	void objectCollected(String elementId, MpgObject object);
+
+	/**
+	 * called at most once per child guid
+	 * 
+	 * @param childGuid  guid of the decomposing object
+	 * @param parentGuid guid of the object it decomposes
+	 */
+	default void parentRelationCollected(String childGuid, String parentGuid) {
+	}
+
+	/**
+	 * called once after all spaces, objects and relations have been pushed
+	 */
+	default void collectionFinished() {
+	}
+}
@@ -0,0 +1,186 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase timers and counters of object collections. Can be updated by the
+ * threads of a parallel collection: the time of a phase that runs on multiple
+ * threads is the sum of the time spent on every thread. Values accumulate until
+ * the statistics are reset. Statistics can forward all values to parent
+ * statistics, such as the totals of a service.
+ */
+public class MpgCollectionStatistics implements MpgCollectionStatisticsMXBean {
+
+	public enum Phase {
+		// collecting the spaces of a model
+		SPACES,
+		// collecting all products of a model, including the phases below
+		PRODUCTS,
+		FINGERPRINTS,
+		PROPERTY_SETS,
+		GEOMETRY,
+		MATERIALS,
+		CLASSIFICATIONS,
+		// setting the parent child relations in the object store
+		RELATIONS,
+		SNAPSHOT_LOAD,
+		SNAPSHOT_SAVE
+	}
+
+	public enum Counter {
+		// products that passed the product filter
+		PRODUCTS_SEEN,
+		// products that were not collected because they lack a guid
+		PRODUCTS_SKIPPED,
+		// products of which the object of an earlier revision was reused
+		PRODUCTS_REUSED,
+		TYPE_CACHE_HITS,
+		LAYER_SET_CACHE_HITS,
+		// objects of which the volume and area are read from their properties
+		GEOMETRY_FROM_PROPERTIES,
+		SNAPSHOT_HITS
+	}
+
+	private final LongAdder[] phaseNanos;
+	private final LongAdder[] phaseCalls;
+	private final LongAdder[] counters;
+	private final MpgCollectionStatistics parent;
+
+	public MpgCollectionStatistics() {
+		this(null);
+	}
+
+	/**
+	 * @param parent statistics that receive every value added to these statistics
+	 *               as well, or null. Resetting these statistics does not reset
+	 *               the parent.
+	 */
+	public MpgCollectionStatistics(MpgCollectionStatistics parent) {
+		this.parent = parent;
+		phaseNanos = createAdders(Phase.values().length);
+		phaseCalls = createAdders(Phase.values().length);
+		counters = createAdders(Counter.values().length);
+	}
+
+	/**
+	 * @return the start time of a phase, to be passed to
+	 *         {@link #stop(Phase, long)}
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * add the time since the start time to a phase
+	 */
+	public void stop(Phase phase, long startNanos) {
+		add(phase, elapsed(startNanos));
+	}
+
+	/**
+	 * @return the time since the start time, for phases that are measured in parts
+	 */
+	public long elapsed(long startNanos) {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * add a measured time as a single call of a phase
+	 */
+	public void add(Phase phase, long nanos) {
+		addPhase(phase, nanos, 1);
+	}
+
+	public void increment(Counter counter) {
+		addCount(counter, 1);
+	}
+
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	public long getCalls(Phase phase) {
+		return phaseCalls[phase.ordinal()].sum();
+	}
+
+	public long getCount(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	/**
+	 * add the values of other statistics to these statistics
+	 */
+	public void add(MpgCollectionStatistics other) {
+		for (Phase phase : Phase.values()) {
+			addPhase(phase, other.getNanos(phase), other.getCalls(phase));
+		}
+		for (Counter counter : Counter.values()) {
+			addCount(counter, other.getCount(counter));
+		}
+	}
+
+	private void addPhase(Phase phase, long nanos, long calls) {
+		phaseNanos[phase.ordinal()].add(nanos);
+		phaseCalls[phase.ordinal()].add(calls);
+		if (parent != null) {
+			parent.addPhase(phase, nanos, calls);
+		}
+	}
+
+	private void addCount(Counter counter, long count) {
+		counters[counter.ordinal()].add(count);
+		if (parent != null) {
+			parent.addCount(counter, count);
+		}
+	}
+
+	@Override
+	public Map<String, Long> getPhaseNanos() {
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		for (Phase phase : Phase.values()) {
+			res.put(phase.name(), getNanos(phase));
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseCalls() {
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		for (Phase phase : Phase.values()) {
+			res.put(phase.name(), getCalls(phase));
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> res = new LinkedHashMap<String, Long>();
+		for (Counter counter : Counter.values()) {
+			res.put(counter.name(), getCount(counter));
+		}
+		return res;
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : phaseNanos) {
+			adder.reset();
+		}
+		for (LongAdder adder : phaseCalls) {
+			adder.reset();
+		}
+		for (LongAdder adder : counters) {
+			adder.reset();
+		}
+	}
+
+	private static LongAdder[] createAdders(int size) {
+		LongAdder[] adders = new LongAdder[size];
+		for (int i = 0; i < size; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+}
@@ -0,0 +1,26 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.Map;
+
+/**
+ * Management interface of the collection statistics
+ */
+public interface MpgCollectionStatisticsMXBean {
+
+	/**
+	 * @return the time spent per phase in nanoseconds
+	 */
+	Map<String, Long> getPhaseNanos();
+
+	/**
+	 * @return the number of times each phase has been run
+	 */
+	Map<String, Long> getPhaseCalls();
+
+	/**
+	 * @return the value of each counter
+	 */
+	Map<String, Long> getCounters();
+
+	void reset();
+}
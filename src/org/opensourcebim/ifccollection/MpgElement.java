@@ -1,6 +1,8 @@
 package org.opensourcebim.ifccollection;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -9,6 +11,7 @@ import org.opensourcebim.mapping.NmdMappingType;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import nl.tno.bim.nmd.domain.NmdProductCard;
+import nl.tno.bim.nmd.domain.NmdProfileSet;
 
 /**
  * Storage container to map mpgOject to the Nmdproducts
@@ -23,6 +26,12 @@ public class MpgElement {
 	private MpgObjectStore store;
 	private NmdMappingType mappingMethod;
 
+	// product cards resolved from the material mappings, valid for a single
+	// version of the product cards in the store.
+	private NmdProductCard[] productCards;
+	private List<NmdProductCard> productCardList;
+	private long productCardVersion;
+
 	public MpgElement(String name, MpgObjectStore store) {
 		ifcName = name;
 		this.mappingMethod = NmdMappingType.None;
@@ -30,7 +39,10 @@ public class MpgElement {
 	}
 
 	public void setMpgObject(MpgObject mpgObject) {
+		MpgObject previous = this.mpgObject;
 		this.mpgObject = mpgObject;
+		this.invalidateProductCards();
+		store.updateElementIndex(this, previous);
 	}
 
 	public MpgObject getMpgObject() {
@@ -54,6 +66,7 @@ public class MpgElement {
 	public void setMappingMethod(NmdMappingType mapping) {
 		if (mapping != this.mappingMethod) {
 			this.mappingMethod = mapping;
+			store.mappingChanged(this);
 			if (mapping == NmdMappingType.None) {
 				// remove any mappings that were added through hierarchical constraints
 				store.toggleMappingDependencies(this.getMpgObject().getGlobalId(), false);
@@ -83,7 +96,26 @@ public class MpgElement {
 
 	@JsonIgnore
 	public List<NmdProductCard> getNmdProductCards() {
-		return this.getStore().getProductCards(this.getProductIds());
+		this.resolveProductCards();
+		return this.productCardList;
+	}
+
+	private NmdProductCard[] resolveProductCards() {
+		long version = this.getStore().getProductCardVersion();
+		if (this.productCards == null || this.productCardVersion != version) {
+			this.productCards = this.getStore().getProductCards(this.getProductIds()).toArray(new NmdProductCard[0]);
+			this.productCardList = Collections.unmodifiableList(Arrays.asList(this.productCards));
+			this.productCardVersion = version;
+		}
+		return this.productCards;
+	}
+
+	/**
+	 * clear the resolved product cards after the material mappings have changed
+	 */
+	void invalidateProductCards() {
+		this.productCards = null;
+		this.productCardList = null;
 	}
 
 	private void addProductCard(NmdProductCard productCard) {
@@ -93,6 +125,7 @@ public class MpgElement {
 
 	public void removeProductCards() {
 		this.getMpgObject().getListedMaterials().forEach(mat -> mat.clearMap());
+		this.invalidateProductCards();
 	}
 
 	public void mapProductCard(MaterialSource mat, NmdProductCard card) {
@@ -104,6 +137,7 @@ public class MpgElement {
 
 		mat.setMapping(card);
 		this.addProductCard(card);
+		this.invalidateProductCards();
 	}
 
 	/**
@@ -112,8 +146,14 @@ public class MpgElement {
 	 * @return see above
 	 */
 	public boolean requiresScaling() {
-		return this.getNmdProductCards().stream().flatMap(pc -> pc.getProfileSets().stream())
-				.anyMatch(ps -> ps.getIsScalable() && ps.getScaler() != null);
+		for (NmdProductCard card : this.resolveProductCards()) {
+			for (NmdProfileSet ps : card.getProfileSets()) {
+				if (ps.getIsScalable() && ps.getScaler() != null) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -123,10 +163,19 @@ public class MpgElement {
 	 * @return flag to indicate all materials are mapped to an nmdProductCard
 	 */
 	public boolean getIsFullyCovered() {
-		return this.getMpgObject() != null
-				&& ((this.getMpgObject().getListedMaterials().stream().allMatch(m -> m.getMapId() > 0)
-						&& this.getMpgObject().getListedMaterials().size() > 0)
-						|| this.getNmdProductCards().stream().anyMatch(pc -> pc.getIsTotaalProduct()));
+		if (this.getMpgObject() == null) {
+			return false;
+		}
+		List<MaterialSource> materials = this.getMpgObject().getListedMaterials();
+		if (!materials.isEmpty() && materials.stream().allMatch(m -> m.getMapId() > 0)) {
+			return true;
+		}
+		for (NmdProductCard card : this.resolveProductCards()) {
+			if (card.getIsTotaalProduct()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -141,10 +190,12 @@ public class MpgElement {
 	}
 
 	public boolean copyMappingFromElement(MpgElement element) {
-		if (this.getValueHash().equals(element.getValueHash())) {
+		if (this.getMpgObject().hasEqualValues(element.getMpgObject())) {
 			this.setMappingMethod(element.getMappingMethod());
 
-			return this.getMpgObject().copyMappingFromObject(element.getMpgObject());
+			boolean copied = this.getMpgObject().copyMappingFromObject(element.getMpgObject());
+			this.invalidateProductCards();
+			return copied;
 		}
 		return false;
 	}
@@ -0,0 +1,114 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Incrementally maintained grouping of MpgElements whose MpgObjects are equal
+ * by value. Groups are keyed by the value fingerprint of the objects. Elements
+ * with an equal fingerprint, but different values, are placed in separate
+ * groups under the same key.
+ */
+class MpgElementGroups {
+
+	private final LinkedHashMap<Long, List<Group>> groupsByFingerprint;
+	private final IdentityHashMap<MpgElement, Group> groupOfElement;
+
+	MpgElementGroups() {
+		groupsByFingerprint = new LinkedHashMap<Long, List<Group>>();
+		groupOfElement = new IdentityHashMap<MpgElement, Group>();
+	}
+
+	/**
+	 * (re)determine the group of an element after its MpgObject or any of the
+	 * grouping values of that object have changed.
+	 */
+	void update(MpgElement element) {
+		MpgObject obj = element.getMpgObject();
+		if (obj == null) {
+			remove(element);
+			return;
+		}
+
+		long fingerprint = obj.getValueFingerprint();
+		Group current = groupOfElement.get(element);
+		if (current != null && current.fingerprint == fingerprint && current.matches(obj, element)) {
+			return;
+		}
+
+		remove(element);
+		List<Group> candidates = groupsByFingerprint.computeIfAbsent(fingerprint, k -> new ArrayList<Group>(1));
+		Group group = null;
+		for (Group candidate : candidates) {
+			if (candidate.matches(obj, element)) {
+				group = candidate;
+				break;
+			}
+		}
+		if (group == null) {
+			group = new Group(fingerprint);
+			candidates.add(group);
+		}
+		group.elements.add(element);
+		groupOfElement.put(element, group);
+	}
+
+	void remove(MpgElement element) {
+		Group group = groupOfElement.remove(element);
+		if (group == null) {
+			return;
+		}
+		group.elements.remove(element);
+		if (group.elements.isEmpty()) {
+			List<Group> candidates = groupsByFingerprint.get(group.fingerprint);
+			candidates.remove(group);
+			if (candidates.isEmpty()) {
+				groupsByFingerprint.remove(group.fingerprint);
+			}
+		}
+	}
+
+	void clear() {
+		groupsByFingerprint.clear();
+		groupOfElement.clear();
+	}
+
+	/**
+	 * @return a snapshot of the groups. Changes to the elements after this call
+	 *         are not reflected in the returned lists.
+	 */
+	List<List<MpgElement>> getGroups() {
+		List<List<MpgElement>> res = new ArrayList<List<MpgElement>>();
+		for (List<Group> candidates : groupsByFingerprint.values()) {
+			for (Group group : candidates) {
+				res.add(new ArrayList<MpgElement>(group.elements));
+			}
+		}
+		return res;
+	}
+
+	private static class Group {
+		private final long fingerprint;
+		private final LinkedHashSet<MpgElement> elements;
+
+		Group(long fingerprint) {
+			this.fingerprint = fingerprint;
+			this.elements = new LinkedHashSet<MpgElement>();
+		}
+
+		/**
+		 * check the values of an object against any other member of the group.
+		 */
+		boolean matches(MpgObject obj, MpgElement element) {
+			for (MpgElement member : elements) {
+				if (member != element) {
+					return obj.hasEqualValues(member.getMpgObject());
+				}
+			}
+			return true;
+		}
+	}
+}
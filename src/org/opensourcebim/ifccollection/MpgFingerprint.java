@@ -0,0 +1,65 @@
+package org.opensourcebim.ifccollection;
+
+/**
+ * Accumulates values into a 64 bit FNV-1a hash. Used to detect whether the
+ * source data of an object has changed between two collections.
+ */
+class MpgFingerprint {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// separates subsequent values so that ("ab", "c") and ("a", "bc") differ
+	private static final long SEPARATOR = 0x1f;
+	private static final long NULL_MARKER = 0x00;
+
+	private long hash;
+
+	MpgFingerprint() {
+		hash = FNV_OFFSET_BASIS;
+	}
+
+	MpgFingerprint add(String value) {
+		if (value == null) {
+			mix(NULL_MARKER);
+		} else {
+			for (int i = 0; i < value.length(); i++) {
+				mix(value.charAt(i));
+			}
+		}
+		mix(SEPARATOR);
+		return this;
+	}
+
+	MpgFingerprint add(long value) {
+		for (int i = 0; i < 8; i++) {
+			mix((value >>> (8 * i)) & 0xff);
+		}
+		mix(SEPARATOR);
+		return this;
+	}
+
+	MpgFingerprint add(double value) {
+		return add(Double.doubleToLongBits(value));
+	}
+
+	/**
+	 * add a property value. Numbers and strings are hashed by value, other values
+	 * by their string representation.
+	 */
+	MpgFingerprint add(Object value) {
+		if (value instanceof Double) {
+			return add((double) (Double) value);
+		}
+		return add(value == null ? null : value.toString());
+	}
+
+	long getValue() {
+		return hash;
+	}
+
+	private void mix(long value) {
+		hash ^= value;
+		hash *= FNV_PRIME;
+	}
+}
@@ -0,0 +1,464 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.bimserver.utils.AreaUnit;
+import org.bimserver.utils.LengthUnit;
+import org.bimserver.utils.VolumeUnit;
+import org.opensourcebim.ifcanalysis.GuidCollection;
+
+import nl.tno.bim.nmd.domain.NmdProductCard;
+
+/**
+ * Immutable column oriented snapshot of an object store for the read only
+ * phases after collection and mapping (calculation, datasets and BCF export).
+ * Objects and elements are addressed by their index in the snapshot. Strings
+ * other than guids are dictionary encoded and the decomposition is stored as
+ * compressed child lists.
+ */
+public final class MpgFrozenStore {
+
+	private final Long projectId;
+	private final Long revisionId;
+	private final LengthUnit lengthUnit;
+	private final AreaUnit areaUnit;
+	private final VolumeUnit volumeUnit;
+	private final double totalFloorArea;
+	private final boolean isIfcDataComplete;
+	private final boolean isElementDataComplete;
+
+	private final String[] dictionary;
+	private final HashMap<String, Integer> dictionaryIds;
+
+	// objects. the first storedObjectCount objects are the objects of the store,
+	// the remainder are objects that are only referenced by an element.
+	private final int objectCount;
+	private final int storedObjectCount;
+	private final String[] guids;
+	private final HashMap<String, Integer> indexByGuid;
+	private final long[] objectIds;
+	private final int[] names;
+	private final int[] types;
+	private final int[] nlsfbCodes;
+	private final int[] parentIds;
+	private final int[] childOffsets;
+	private final int[] children;
+	private final double[] volumes;
+	private final double[] floorAreas;
+	private final double[] sortedDimensions;
+	private final int[] materialOffsets;
+	private final int[] materialNames;
+	private final int[] materialSources;
+	private final int[] qualityFlags;
+
+	// elements
+	private final int elementCount;
+	private final int[] elementObjects;
+	private final int[] cardOffsets;
+	private final NmdProductCard[] cards;
+	private final boolean[] requiresScaling;
+	private final boolean[] isFullyCovered;
+
+	MpgFrozenStore(MpgObjectStoreImpl store, MpgQualityAnalysis analysis) {
+		projectId = store.getProjectId();
+		revisionId = store.getRevisionId();
+		lengthUnit = store.getLengthUnit();
+		areaUnit = store.getAreaUnit();
+		volumeUnit = store.getVolumeUnit();
+		totalFloorArea = store.getTotalFloorArea();
+		isIfcDataComplete = store.isIfcDataComplete();
+		isElementDataComplete = store.isElementDataComplete();
+
+		// determine the distinct objects of the store and its elements
+		IdentityHashMap<MpgObject, Integer> indexOfObject = new IdentityHashMap<MpgObject, Integer>();
+		List<MpgObject> objects = new ArrayList<MpgObject>();
+		for (MpgObject obj : store.getObjects()) {
+			if (indexOfObject.putIfAbsent(obj, objects.size()) == null) {
+				objects.add(obj);
+			}
+		}
+		storedObjectCount = objects.size();
+		List<MpgElement> elements = new ArrayList<MpgElement>(store.getElements());
+		for (MpgElement el : elements) {
+			MpgObject obj = el.getMpgObject();
+			if (obj != null && indexOfObject.putIfAbsent(obj, objects.size()) == null) {
+				objects.add(obj);
+			}
+		}
+
+		StringDictionary dict = new StringDictionary();
+		objectCount = objects.size();
+		guids = new String[objectCount];
+		indexByGuid = new HashMap<String, Integer>();
+		objectIds = new long[objectCount];
+		names = new int[objectCount];
+		types = new int[objectCount];
+		nlsfbCodes = new int[objectCount];
+		parentIds = new int[objectCount];
+		volumes = new double[objectCount];
+		floorAreas = new double[objectCount];
+		sortedDimensions = new double[objectCount * 3];
+		qualityFlags = new int[objectCount];
+		materialOffsets = new int[objectCount + 1];
+
+		int numMaterials = 0;
+		for (MpgObject obj : objects) {
+			numMaterials += obj.getListedMaterials().size();
+		}
+		materialNames = new int[numMaterials];
+		materialSources = new int[numMaterials];
+
+		for (int i = 0; i < objectCount; i++) {
+			MpgObject obj = objects.get(i);
+			guids[i] = obj.getGlobalId();
+			if (obj.getGlobalId() != null && i < storedObjectCount) {
+				indexByGuid.putIfAbsent(obj.getGlobalId(), i);
+			}
+			objectIds[i] = obj.getObjectId();
+			names[i] = dict.encode(obj.getObjectName());
+			types[i] = dict.encode(obj.getObjectType());
+			nlsfbCodes[i] = dict.encode(obj.getNLsfbCode() == null ? null : obj.getNLsfbCode().print());
+			parentIds[i] = dict.encode(obj.getParentId());
+			qualityFlags[i] = analysis.getFlags(obj);
+
+			MpgGeometry geom = obj.getGeometry();
+			volumes[i] = geom == null || geom.getVolume() == null ? Double.NaN : geom.getVolume();
+			floorAreas[i] = geom == null || geom.getFloorArea() == null ? Double.NaN : geom.getFloorArea();
+			Double[] dims = geom == null ? null : geom.getDimensions();
+			for (int d = 0; d < 3; d++) {
+				sortedDimensions[i * 3 + d] = dims == null || dims.length != 3 || dims[d] == null ? Double.NaN
+						: dims[d];
+			}
+			Arrays.sort(sortedDimensions, i * 3, i * 3 + 3);
+			reverse(sortedDimensions, i * 3, i * 3 + 2);
+
+			int m = materialOffsets[i];
+			for (MaterialSource mat : obj.getListedMaterials()) {
+				materialNames[m] = dict.encode(mat.getName());
+				materialSources[m] = dict.encode(mat.getSource());
+				m++;
+			}
+			materialOffsets[i + 1] = m;
+		}
+
+		// decomposition as compressed child lists
+		childOffsets = new int[objectCount + 1];
+		List<Integer> childList = new ArrayList<Integer>();
+		for (int i = 0; i < objectCount; i++) {
+			for (MpgObject child : store.getChildList(guids[i])) {
+				Integer childIndex = indexOfObject.get(child);
+				if (childIndex != null) {
+					childList.add(childIndex);
+				}
+			}
+			childOffsets[i + 1] = childList.size();
+		}
+		children = new int[childList.size()];
+		for (int c = 0; c < children.length; c++) {
+			children[c] = childList.get(c);
+		}
+
+		// elements with their resolved product cards
+		elementCount = elements.size();
+		elementObjects = new int[elementCount];
+		cardOffsets = new int[elementCount + 1];
+		requiresScaling = new boolean[elementCount];
+		isFullyCovered = new boolean[elementCount];
+		List<NmdProductCard> cardList = new ArrayList<NmdProductCard>();
+		for (int e = 0; e < elementCount; e++) {
+			MpgElement el = elements.get(e);
+			elementObjects[e] = el.getMpgObject() == null ? -1 : indexOfObject.get(el.getMpgObject());
+			cardList.addAll(el.getNmdProductCards());
+			cardOffsets[e + 1] = cardList.size();
+			requiresScaling[e] = el.requiresScaling();
+			isFullyCovered[e] = el.getIsFullyCovered();
+		}
+		cards = cardList.toArray(new NmdProductCard[0]);
+
+		dictionary = dict.toArray();
+		dictionaryIds = dict.ids;
+	}
+
+	public Long getProjectId() {
+		return projectId;
+	}
+
+	public Long getRevisionId() {
+		return revisionId;
+	}
+
+	public LengthUnit getLengthUnit() {
+		return lengthUnit;
+	}
+
+	public AreaUnit getAreaUnit() {
+		return areaUnit;
+	}
+
+	public VolumeUnit getVolumeUnit() {
+		return volumeUnit;
+	}
+
+	public double getTotalFloorArea() {
+		return totalFloorArea;
+	}
+
+	public boolean isIfcDataComplete() {
+		return isIfcDataComplete;
+	}
+
+	public boolean isElementDataComplete() {
+		return isElementDataComplete;
+	}
+
+	// ---- objects
+
+	/**
+	 * @return the number of objects in the store. Objects that are only
+	 *         referenced by elements are not included.
+	 */
+	public int getObjectCount() {
+		return storedObjectCount;
+	}
+
+	/**
+	 * @return the index of the first object with the guid or -1 if none is found
+	 */
+	public int indexOf(String guid) {
+		Integer index = guid == null ? null : indexByGuid.get(guid);
+		return index == null ? -1 : index;
+	}
+
+	public String getGlobalId(int obj) {
+		return guids[obj];
+	}
+
+	public long getObjectId(int obj) {
+		return objectIds[obj];
+	}
+
+	public String getObjectName(int obj) {
+		return decode(names[obj]);
+	}
+
+	public String getObjectType(int obj) {
+		return decode(types[obj]);
+	}
+
+	public String getNLsfbCode(int obj) {
+		return decode(nlsfbCodes[obj]);
+	}
+
+	public String getParentId(int obj) {
+		return decode(parentIds[obj]);
+	}
+
+	public int getChildCount(int obj) {
+		return childOffsets[obj + 1] - childOffsets[obj];
+	}
+
+	/**
+	 * @return the object index of the n-th child of an object
+	 */
+	public int getChild(int obj, int n) {
+		return children[childOffsets[obj] + n];
+	}
+
+	public double getVolume(int obj) {
+		return volumes[obj];
+	}
+
+	public double getFloorArea(int obj) {
+		return floorAreas[obj];
+	}
+
+	/**
+	 * @return the n-th dimension of the object, ordered from large to small
+	 */
+	public double getSortedDimension(int obj, int n) {
+		return sortedDimensions[obj * 3 + n];
+	}
+
+	/**
+	 * get the material names of an object.
+	 *
+	 * @param source source of the material or null for all materials
+	 */
+	public List<String> getMaterialNamesBySource(int obj, String source) {
+		Integer sourceId = source == null ? null : dictionaryIds.get(source);
+		if (source != null && sourceId == null) {
+			return new ArrayList<String>();
+		}
+		List<String> res = new ArrayList<String>(materialOffsets[obj + 1] - materialOffsets[obj]);
+		for (int m = materialOffsets[obj]; m < materialOffsets[obj + 1]; m++) {
+			if (source == null || materialSources[m] == sourceId.intValue()) {
+				res.add(decode(materialNames[m]));
+			}
+		}
+		return res;
+	}
+
+	boolean hasIssue(int obj, int flag) {
+		return (qualityFlags[obj] & flag) != 0;
+	}
+
+	// ---- elements
+
+	public int getElementCount() {
+		return elementCount;
+	}
+
+	/**
+	 * @return the object index of the element or -1 if it has no object
+	 */
+	public int getElementObject(int el) {
+		return elementObjects[el];
+	}
+
+	public int getProductCardCount(int el) {
+		return cardOffsets[el + 1] - cardOffsets[el];
+	}
+
+	public NmdProductCard getProductCard(int el, int n) {
+		return cards[cardOffsets[el] + n];
+	}
+
+	public boolean requiresScaling(int el) {
+		return requiresScaling[el];
+	}
+
+	public boolean isFullyCovered(int el) {
+		return isFullyCovered[el];
+	}
+
+	/**
+	 * Same as MpgElement.getRequiredNumberOfUnits on the snapshot values.
+	 */
+	public double getRequiredNumberOfUnits(int el, NmdProductCard card) {
+		int obj = elementObjects[el];
+		if (obj < 0 || card.getProfileSets().size() == 0) {
+			return Double.NaN;
+		}
+
+		String productUnit = card.getUnit().toLowerCase();
+		if (productUnit.equals("m1")) {
+			return getSortedDimension(obj, 0);
+		}
+		if (productUnit.equals("m2")) {
+			return getSortedDimension(obj, 0) * getSortedDimension(obj, 1);
+		}
+		if (productUnit.equals("m3")) {
+			return getVolume(obj);
+		}
+		if (productUnit.equals("p")) {
+			return 1.0;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Same as the scale dimensions of MpgGeometry.getScalerOrientation on the
+	 * snapshot values.
+	 */
+	public Double[] getScaleDims(int el, int numProductDimensions) {
+		int obj = elementObjects[el];
+		if (numProductDimensions == 1) {
+			return new Double[] { getSortedDimension(obj, 1), getSortedDimension(obj, 2) };
+		}
+		return new Double[] { getSortedDimension(obj, 2) };
+	}
+
+	// ---- guid collections
+
+	public GuidCollection getGuidsWithoutMaterialAndWithoutFullDecomposedMaterials() {
+		return createGuidCollection(
+				"Object GUIDs without material and any of the decomposed objects without material",
+				MpgQualityAnalysis.UNDEFINED_MATERIALS_IN_TREE);
+	}
+
+	public GuidCollection getGuidsWithRedundantMaterials() {
+		return createGuidCollection("Object GUIDs that cannot be linked to materials 1-on-1",
+				MpgQualityAnalysis.REDUNDANT_MATERIALS);
+	}
+
+	public GuidCollection getGuidsWithUndefinedLayerMats() {
+		return createGuidCollection("Object GUIDsthat have undefined layers", MpgQualityAnalysis.UNDEFINED_LAYERS);
+	}
+
+	public GuidCollection getGuidsWithoutMappings() {
+		List<String> res = new ArrayList<String>();
+		for (int e = 0; e < elementCount; e++) {
+			if (!isFullyCovered[e] && elementObjects[e] >= 0) {
+				res.add(guids[elementObjects[e]]);
+			}
+		}
+		GuidCollection coll = new GuidCollection(this, "Object GUIDs for objects with incomplete NMD mapping");
+		coll.setCollection(res);
+		return coll;
+	}
+
+	private GuidCollection createGuidCollection(String description, int flag) {
+		List<String> res = new ArrayList<String>();
+		for (int i = 0; i < storedObjectCount; i++) {
+			if (hasIssue(i, flag)) {
+				res.add(guids[i]);
+			}
+		}
+		GuidCollection coll = new GuidCollection(this, description);
+		coll.setCollection(res);
+		return coll;
+	}
+
+	/**
+	 * @return the indices of the objects with the given guids
+	 */
+	public List<Integer> indicesOf(Collection<String> guids) {
+		List<Integer> res = new ArrayList<Integer>();
+		for (String guid : guids) {
+			int index = indexOf(guid);
+			if (index >= 0) {
+				res.add(index);
+			}
+		}
+		return res;
+	}
+
+	private String decode(int id) {
+		return id < 0 ? null : dictionary[id];
+	}
+
+	private static void reverse(double[] values, int from, int to) {
+		while (from < to) {
+			double tmp = values[from];
+			values[from++] = values[to];
+			values[to--] = tmp;
+		}
+	}
+
+	private static class StringDictionary {
+		private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		int encode(String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer id = ids.get(value);
+			if (id == null) {
+				id = values.size();
+				ids.put(value, id);
+				values.add(value);
+			}
+			return id;
+		}
+
+		String[] toArray() {
+			return values.toArray(new String[0]);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package org.opensourcebim.ifccollection;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader for the additional data json of a GeometryInfo object. Only
+ * the values that are used for the mpg calculations are read, all other values
+ * are skipped. Results are cached by the json string as repeated geometry
+ * results in identical strings.
+ */
+class MpgGeometryDataParser {
+
+	private static final int MAX_CACHED_ENTRIES = 10000;
+
+	private final JsonFactory factory;
+	private final ConcurrentHashMap<String, GeometryData> cache;
+
+	MpgGeometryDataParser() {
+		factory = new JsonFactory();
+		cache = new ConcurrentHashMap<String, GeometryData>();
+	}
+
+	/**
+	 * @param additionalData json object with geometry values
+	 * @return the parsed values. Values that are not present are NaN.
+	 * @throws IOException when the data is not valid json
+	 */
+	GeometryData parse(String additionalData) throws IOException {
+		if (additionalData == null || additionalData.isEmpty()) {
+			return GeometryData.EMPTY;
+		}
+		GeometryData data = cache.get(additionalData);
+		if (data == null) {
+			data = read(additionalData);
+			if (cache.size() < MAX_CACHED_ENTRIES) {
+				cache.put(additionalData, data);
+			}
+		}
+		return data;
+	}
+
+	void clear() {
+		cache.clear();
+	}
+
+	private GeometryData read(String additionalData) throws IOException {
+		GeometryData data = new GeometryData();
+		try (JsonParser parser = factory.createParser(additionalData)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return GeometryData.EMPTY;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				data.fieldCount++;
+				switch (name) {
+				case "SURFACE_AREA_ALONG_Z":
+					data.surfaceAreaAlongZ = readDouble(parser, value);
+					break;
+				case "LARGEST_FACE_AREA":
+					data.largestFaceArea = readDouble(parser, value);
+					break;
+				case "TOTAL_SURFACE_AREA":
+					data.totalSurfaceArea = readDouble(parser, value);
+					break;
+				case "BOUNDING_BOX_SIZE_ALONG_X":
+					data.boundingBoxX = readDouble(parser, value);
+					break;
+				case "BOUNDING_BOX_SIZE_ALONG_Y":
+					data.boundingBoxY = readDouble(parser, value);
+					break;
+				case "BOUNDING_BOX_SIZE_ALONG_Z":
+					data.boundingBoxZ = readDouble(parser, value);
+					break;
+				default:
+					parser.skipChildren();
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * read a value the same way as JsonNode.asDouble does
+	 */
+	private static double readDouble(JsonParser parser, JsonToken value) throws IOException {
+		switch (value) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_TRUE:
+			return 1.0;
+		case VALUE_STRING:
+			try {
+				return Double.parseDouble(parser.getText().trim());
+			} catch (NumberFormatException e) {
+				return 0.0;
+			}
+		default:
+			parser.skipChildren();
+			return 0.0;
+		}
+	}
+
+	/**
+	 * the values of a single additional data object
+	 */
+	static class GeometryData {
+		static final GeometryData EMPTY = new GeometryData();
+
+		private int fieldCount = 0;
+		private double surfaceAreaAlongZ = Double.NaN;
+		private double largestFaceArea = Double.NaN;
+		private double totalSurfaceArea = Double.NaN;
+		private double boundingBoxX = Double.NaN;
+		private double boundingBoxY = Double.NaN;
+		private double boundingBoxZ = Double.NaN;
+
+		boolean isEmpty() {
+			return fieldCount == 0;
+		}
+
+		double getSurfaceAreaAlongZ() {
+			return surfaceAreaAlongZ;
+		}
+
+		double getLargestFaceArea() {
+			return largestFaceArea;
+		}
+
+		double getTotalSurfaceArea() {
+			return totalSurfaceArea;
+		}
+
+		double getBoundingBoxX() {
+			return boundingBoxX;
+		}
+
+		double getBoundingBoxY() {
+			return boundingBoxY;
+		}
+
+		double getBoundingBoxZ() {
+			return boundingBoxZ;
+		}
+	}
+}
@@ -3,26 +3,29 @@ package org.opensourcebim.ifccollection;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.MutableTriple;
-import org.apache.commons.lang3.tuple.Triple;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bimserver.emf.IdEObject;
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.models.geometry.Bounds;
 import org.bimserver.models.geometry.GeometryInfo;
-import org.bimserver.models.ifc2x3tc1.IfcAnnotation;
 import org.bimserver.models.ifc2x3tc1.IfcBoolean;
-import org.bimserver.models.ifc2x3tc1.IfcBuilding;
-import org.bimserver.models.ifc2x3tc1.IfcBuildingStorey;
 import org.bimserver.models.ifc2x3tc1.IfcClassificationNotationSelect;
 import org.bimserver.models.ifc2x3tc1.IfcClassificationReference;
 import org.bimserver.models.ifc2x3tc1.IfcElementQuantity;
-import org.bimserver.models.ifc2x3tc1.IfcFurnishingElement;
-import org.bimserver.models.ifc2x3tc1.IfcGrid;
 import org.bimserver.models.ifc2x3tc1.IfcIdentifier;
 import org.bimserver.models.ifc2x3tc1.IfcLabel;
 import org.bimserver.models.ifc2x3tc1.IfcMaterial;
@@ -32,7 +35,6 @@ import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSetUsage;
 import org.bimserver.models.ifc2x3tc1.IfcMaterialList;
 import org.bimserver.models.ifc2x3tc1.IfcMaterialSelect;
 import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
-import org.bimserver.models.ifc2x3tc1.IfcOpeningElement;
 import org.bimserver.models.ifc2x3tc1.IfcPhysicalQuantity;
 import org.bimserver.models.ifc2x3tc1.IfcPhysicalSimpleQuantity;
 import org.bimserver.models.ifc2x3tc1.IfcProduct;
@@ -51,29 +53,21 @@ import org.bimserver.models.ifc2x3tc1.IfcRelDecomposes;
 import org.bimserver.models.ifc2x3tc1.IfcRelDefines;
 import org.bimserver.models.ifc2x3tc1.IfcRelDefinesByProperties;
 import org.bimserver.models.ifc2x3tc1.IfcRelDefinesByType;
-import org.bimserver.models.ifc2x3tc1.IfcSite;
 import org.bimserver.models.ifc2x3tc1.IfcSpace;
 import org.bimserver.models.ifc2x3tc1.IfcTypeObject;
 import org.bimserver.models.ifc2x3tc1.IfcTypeProduct;
 import org.bimserver.models.ifc2x3tc1.IfcValue;
-import org.bimserver.models.ifc2x3tc1.IfcVirtualElement;
-import org.bimserver.models.ifc2x3tc1.impl.IfcAnnotationImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcBuildingImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcBuildingStoreyImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcFurnishingElementImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcGridImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcOpeningElementImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcSiteImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcSpaceImpl;
-import org.bimserver.models.ifc2x3tc1.impl.IfcVirtualElementImpl;
 import org.bimserver.utils.AreaUnit;
 import org.bimserver.utils.IfcUtils;
 import org.bimserver.utils.LengthUnit;
 import org.bimserver.utils.VolumeUnit;
 import org.eclipse.emf.common.util.EList;
+import org.opensourcebim.ifccollection.MpgCollectionStatistics.Counter;
+import org.opensourcebim.ifccollection.MpgCollectionStatistics.Phase;
+import org.opensourcebim.ifccollection.MpgGeometryDataParser.GeometryData;
+import org.opensourcebim.mapping.NmdMappingType;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.tno.bim.nmd.domain.NmdProductCard;
 
 /**
  * Class to retrieve the material properties from the IfcModel
@@ -84,8 +78,8 @@ public class MpgIfcObjectCollector {
 
 	private MpgObjectStoreImpl objectStore;
 
-	// products that should not be included in the material calculations.
-	private List<Class<? extends IfcProduct>> ignoredProducts;
+	// products that should be included in the material calculations.
+	private MpgProductFilter productFilter = new MpgProductFilter();
 
 	// reporting units and imported units to help convert measurements
 	private AreaUnit areaUnit = AreaUnit.SQUARED_METER;
@@ -94,23 +88,90 @@ public class MpgIfcObjectCollector {
 	private AreaUnit modelAreaUnit;
 	private VolumeUnit modelVolumeUnit;
 	private LengthUnit modelLengthUnit;
-	private ObjectMapper mapper = new ObjectMapper();
+	private MpgGeometryDataParser geometryDataParser = new MpgGeometryDataParser();
+
+	// store of an earlier revision of which unchanged objects are reused
+	private MpgObjectStoreImpl previousStore = null;
+	private List<CollectedProduct> reusedProducts = new ArrayList<CollectedProduct>();
+	// fingerprint the source data of the products, only needed when the results
+	// are compared with an earlier or a later collection
+	private boolean fingerprintProducts = false;
+	// cache and key of the last collection when it should still be cached
+	private PendingSnapshot pendingSnapshot = null;
+
+	// resolve the property sets of products during the collection instead of on
+	// first access of the object properties
+	private boolean eagerPropertySets = false;
+	// products of the last collection, referred to by the deferred property
+	// sources of its objects until the model is released
+	private ProductReferences productReferences = new ProductReferences(null);
+
+	// number of threads used to collect the products of a model
+	private int parallelism = 1;
+	private static final int MIN_PRODUCTS_FOR_PARALLEL_COLLECTION = 256;
+	private static final int MIN_PRODUCTS_PER_TASK = 32;
+
+	// phase timers and counters of all collections of this collector
+	private final MpgCollectionStatistics statistics;
+
+	// canonical strings of the current collection
+	private MpgSymbolTable symbols = new MpgSymbolTable();
+	// property names and labels shared by the objects of the current collection
+	private MpgPropertySchema propertySchema = new MpgPropertySchema();
+	// resolved property sets and materials of the type objects of the current collection
+	private ConcurrentHashMap<Long, List<Pair<String, Object>>> typeProperties = new ConcurrentHashMap<>();
+	private ConcurrentHashMap<Long, ResolvedMaterials> typeMaterials = new ConcurrentHashMap<>();
+	// normalized layers of the material layer sets of the current collection
+	private ConcurrentHashMap<Long, MaterialLayerSet> layerSets = new ConcurrentHashMap<>();
 
 	public MpgIfcObjectCollector() {
-		objectStore = new MpgObjectStoreImpl();
-		objectStore.setUnits(volumeUnit, areaUnit, lengthUnit);	
-		
-		ignoredProducts = Arrays.asList(IfcSite.class, IfcSiteImpl.class, IfcBuilding.class, IfcBuildingImpl.class,
-				IfcBuildingStorey.class, IfcBuildingStoreyImpl.class, IfcFurnishingElement.class,
-				IfcFurnishingElementImpl.class, IfcOpeningElement.class, IfcOpeningElementImpl.class,
-				IfcVirtualElement.class, IfcVirtualElementImpl.class, IfcSpace.class, IfcSpaceImpl.class,
-				IfcAnnotation.class, IfcAnnotationImpl.class, IfcGrid.class, IfcGridImpl.class);
+		this(null);
+	}
+
+	/**
+	 * @param parentStatistics statistics that receive the timers and counters of
+	 *                         this collector as well, including the property sets
+	 *                         that are resolved after a collection. Can be null.
+	 */
+	public MpgIfcObjectCollector(MpgCollectionStatistics parentStatistics) {
+		statistics = new MpgCollectionStatistics(parentStatistics);
+		objectStore = createStore();
+	}
+
+	private MpgObjectStoreImpl createStore() {
+		MpgObjectStoreImpl store = new MpgObjectStoreImpl();
+		store.setUnits(volumeUnit, areaUnit, lengthUnit);
+		store.setStatistics(statistics);
+		return store;
 	}
 
 	public MpgObjectStore results() {
 		return this.objectStore;
 	}
 
+	/**
+	 * release the collected store, so it can be garbage collected as soon as the
+	 * caller no longer uses it. The statistics of the collector remain available.
+	 */
+	public void releaseResults() {
+		objectStore = createStore();
+	}
+
+	/**
+	 * release the ifc model of the last collection. The objects of that
+	 * collection no longer refer to its products, so the model can be garbage
+	 * collected while the objects are still used by a caller that does not keep
+	 * the model itself. Accessing property sets that were not resolved before
+	 * throws an {@link IllegalStateException} afterwards; property sets of eager
+	 * and incremental collections are resolved during the collection.
+	 */
+	public void releaseModel() {
+		productReferences.products = null;
+		typeProperties.clear();
+		typeMaterials.clear();
+		layerSets.clear();
+	}
+
 	/**
 	 * method to read in a IfcModel and retrieve material properties for MPG
 	 * calculations
@@ -118,13 +179,192 @@ public class MpgIfcObjectCollector {
 	 * @param ifcModel for now only a ifc2x3tc1 IfcModel object
 	 */
 	public MpgObjectStore collectIfcModelObjects(IfcModelInterface ifcModel) {
-		objectStore.reset();
+		collectIfcModelObjects(ifcModel, new MpgObjectStoreSink(objectStore));
+		return objectStore;
+	}
+
+	/**
+	 * method to read in a new revision of an IfcModel that has been collected
+	 * before. Products with the same guid and source data as in the previous store
+	 * keep their object and mapping, only new and changed products are collected.
+	 * The objects that are reused are moved to the new store, so the previous
+	 * store should not be used afterwards. Only objects of an incremental
+	 * collection can be reused, so the first revision should be collected with a
+	 * null previous store as well.
+	 * 
+	 * @param ifcModel      for now only a ifc2x3tc1 IfcModel object
+	 * @param previousStore the results of an earlier incremental collection of
+	 *                      the model or null
+	 * @return a new store with the objects of the model
+	 */
+	public MpgObjectStore collectIfcModelObjects(IfcModelInterface ifcModel, MpgObjectStore previousStore) {
+		return collectIncrementally(ifcModel,
+				previousStore instanceof MpgObjectStoreImpl ? (MpgObjectStoreImpl) previousStore : null);
+	}
+
+	/**
+	 * collect a model into a new store with fingerprinted objects
+	 * 
+	 * @param previousStore store of which unchanged objects are reused or null
+	 */
+	private MpgObjectStore collectIncrementally(IfcModelInterface ifcModel, MpgObjectStoreImpl previousStore) {
+		this.previousStore = previousStore;
+		this.fingerprintProducts = true;
+		this.reusedProducts.clear();
+		try {
+			objectStore = createStore();
+			collectIfcModelObjects(ifcModel, new MpgObjectStoreSink(objectStore));
+			restoreMappings();
+		} finally {
+			this.previousStore = null;
+			this.fingerprintProducts = false;
+			this.reusedProducts.clear();
+		}
+		return objectStore;
+	}
+
+	/**
+	 * method to read in a IfcModel through a snapshot cache. When the cache
+	 * contains a snapshot of the revision with the same model content the model is
+	 * not collected at all, otherwise the model is collected incrementally from the
+	 * snapshot of the latest earlier revision (when present). Models that are not
+	 * a stored revision of a project are collected without the cache. A collected
+	 * store is only added to the cache through {@link #saveSnapshot}, so the
+	 * caller can resolve the mappings first. NMD product cards are not part of a
+	 * snapshot, the resolver retrieves the cards of the restored material mappings
+	 * again.
+	 * 
+	 * @param ifcModel for now only a ifc2x3tc1 IfcModel object
+	 * @param cache    snapshots of earlier collections
+	 * @return the store with the objects of the model
+	 */
+	public MpgObjectStore collectIfcModelObjects(IfcModelInterface ifcModel, MpgStoreSnapshotCache cache) {
+		pendingSnapshot = null;
+		List<IfcProject> projects = ifcModel.getAllWithSubTypes(IfcProject.class);
+		if (cache == null || projects.isEmpty() || projects.get(0).getPid() <= 0 || projects.get(0).getRid() <= 0) {
+			return collectIfcModelObjects(ifcModel);
+		}
+
+		long projectId = projects.get(0).getPid();
+		long revisionId = projects.get(0).getRid();
+		String variant = getSnapshotVariant();
+		long start = statistics.start();
+		long checksum = getModelChecksum(ifcModel);
+		MpgObjectStore cached = cache.load(projectId, revisionId, variant, checksum);
+		if (cached instanceof MpgObjectStoreImpl) {
+			statistics.stop(Phase.SNAPSHOT_LOAD, start);
+			statistics.increment(Counter.SNAPSHOT_HITS);
+			objectStore = (MpgObjectStoreImpl) cached;
+			objectStore.setStatistics(statistics);
+			return objectStore;
+		}
+		MpgObjectStore previous = cache.loadPrevious(projectId, revisionId, variant);
+		statistics.stop(Phase.SNAPSHOT_LOAD, start);
+
+		collectIncrementally(ifcModel, previous instanceof MpgObjectStoreImpl ? (MpgObjectStoreImpl) previous : null);
+		pendingSnapshot = new PendingSnapshot(cache, variant, checksum);
+		return objectStore;
+	}
+
+	/**
+	 * add the store of the last collection through a snapshot cache to that cache.
+	 * Does nothing when that collection was answered from the cache or did not
+	 * use the cache at all. Caching is optional, so failures to save the snapshot
+	 * are not passed on.
+	 * 
+	 * @param store the collected store, after its mappings have been resolved
+	 */
+	public void saveSnapshot(MpgObjectStore store) {
+		PendingSnapshot snapshot = pendingSnapshot;
+		pendingSnapshot = null;
+		if (snapshot == null || store == null) {
+			return;
+		}
+
+		long start = statistics.start();
+		try {
+			snapshot.cache.save(store, snapshot.variant, snapshot.checksum);
+		} catch (IOException | RuntimeException e) {
+			// the collection itself succeeded, it will only not be cached
+			e.printStackTrace();
+		}
+		statistics.stop(Phase.SNAPSHOT_SAVE, start);
+	}
+
+	/**
+	 * @return a checksum of the products of a model: their type, guid, name and
+	 *         geometry. Guards the cache against models that are presented with
+	 *         the ids of another revision.
+	 */
+	private long getModelChecksum(IfcModelInterface ifcModel) {
+		MpgFingerprint checksum = new MpgFingerprint();
+		for (IfcProduct product : ifcModel.getAllWithSubTypes(IfcProduct.class)) {
+			checksum.add(symbols.typeName(product.getClass())).add(product.getGlobalId()).add(product.getName());
+			GeometryInfo geometry = product.getGeometry();
+			if (geometry != null) {
+				checksum.add(geometry.getVolume()).add(geometry.getArea());
+			}
+		}
+		return checksum.getValue();
+	}
+
+	/**
+	 * @return a key of the settings that change the results of a collection
+	 */
+	private String getSnapshotVariant() {
+		List<String> excludedTypes = new ArrayList<String>(productFilter.getExcludedTypes());
+		Collections.sort(excludedTypes);
+		MpgFingerprint fingerprint = new MpgFingerprint();
+		fingerprint.add(volumeUnit.name()).add(areaUnit.name()).add(lengthUnit.name());
+		for (String type : excludedTypes) {
+			fingerprint.add(type);
+		}
+		return Long.toHexString(fingerprint.getValue());
+	}
+
+	/**
+	 * apply the mappings of the reused elements to the elements of the new store.
+	 * Mappings that follow from the decomposition are derived again from the
+	 * direct mappings. The material map ids are part of the reused objects, the
+	 * product cards are only present when the previous store was resolved in this
+	 * session; otherwise the resolver retrieves the cards of these ids again.
+	 */
+	private void restoreMappings() {
+		for (CollectedProduct product : reusedProducts) {
+			for (NmdProductCard card : product.previousElement.getNmdProductCards()) {
+				objectStore.addProductCard(card);
+			}
+		}
+		for (CollectedProduct product : reusedProducts) {
+			NmdMappingType mapping = product.previousElement.getMappingMethod();
+			if (mapping != NmdMappingType.IndirectThroughChildren && mapping != NmdMappingType.IndirectThroughParent) {
+				objectStore.getElementByObjectGuid(product.guid).setMappingMethod(mapping);
+			}
+		}
+	}
+
+	/**
+	 * method to read in a IfcModel and push the collected spaces and objects to a
+	 * sink while the collection is running. Does not fill the store of this
+	 * collector.
+	 * 
+	 * @param ifcModel for now only a ifc2x3tc1 IfcModel object
+	 * @param sink     consumer of the collected spaces, objects and relations
+	 */
+	public void collectIfcModelObjects(IfcModelInterface ifcModel, MpgCollectionSink sink) {
+		symbols.clear();
+		propertySchema = new MpgPropertySchema();
+		typeProperties.clear();
+		typeMaterials.clear();
+		layerSets.clear();
+		geometryDataParser.clear();
 		
 		// there is always a single ifcproject in the file. get the project and revision id
 		IfcProject proj = ifcModel.getAllWithSubTypes(IfcProject.class).get(0);
 		if (proj != null) {
-			objectStore.setProjectId((long)proj.getPid());
-			objectStore.setRevisionId((long)proj.getRid());
+			sink.collectionStarted((long)proj.getPid(), (long)proj.getRid());
+		} else {
+			sink.collectionStarted(null, null);
 		}
 
 		// get project wide parameters
@@ -133,6 +373,7 @@ public class MpgIfcObjectCollector {
 		modelLengthUnit = IfcUtils.getLengthUnit(ifcModel);
 
 		// loop through IfcSpaces
+		long start = statistics.start();
 		for (IfcSpace space : ifcModel.getAllWithSubTypes(IfcSpace.class)) {
 
 			// omit any external spaces.
@@ -154,79 +395,234 @@ public class MpgIfcObjectCollector {
 
 			// ToDo: also include geometric check?
 			if (!isIncludedSemantically) {
-				objectStore.getSpaces()
-						.add(new MpgSpaceImpl(space.getGlobalId(), geom.getVolume(), geom.getFloorArea()));
+				sink.spaceCollected(new MpgSpaceImpl(space.getGlobalId(), geom.getVolume(), geom.getFloorArea()));
 			}
 		}
+		statistics.stop(Phase.SPACES, start);
+
+		// collect the products that constitute the physical building. The products
+		// are pushed to the sink in order of the model regardless of the parallelism.
+		start = statistics.start();
+		List<IfcProduct> products = productFilter.getProducts(ifcModel);
+		productReferences = new ProductReferences(products);
+		Set<String> childrenWithParent = new HashSet<String>();
+		if (parallelism > 1 && products.size() >= MIN_PRODUCTS_FOR_PARALLEL_COLLECTION) {
+			// products are collected in windows, so only a single window of collected
+			// products is buffered before it is pushed
+			int windowSize = MIN_PRODUCTS_FOR_PARALLEL_COLLECTION * parallelism;
+			int batchSize = Math.max(MIN_PRODUCTS_PER_TASK, windowSize / (parallelism * 4));
+			CollectedProduct[] collected = new CollectedProduct[Math.min(windowSize, products.size())];
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				for (int from = 0; from < products.size(); from += windowSize) {
+					List<IfcProduct> window = products.subList(from, Math.min(from + windowSize, products.size()));
+					pool.invoke(new CollectProductsTask(window, from, collected, 0, window.size(), batchSize));
+					for (int i = 0; i < window.size(); i++) {
+						pushProduct(collected[i], childrenWithParent, sink);
+						collected[i] = null;
+					}
+				}
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			for (int i = 0; i < products.size(); i++) {
+				pushProduct(collectProduct(products.get(i), i), childrenWithParent, sink);
+			}
+		}
+		statistics.stop(Phase.PRODUCTS, start);
 
-		Map<String, String> childToParentMap = new HashMap<String, String>();
+		sink.collectionFinished();
+	}
 
-		// loop through IfcProducts that constitute the physical building.
-		for (IfcProduct product : ifcModel.getAllWithSubTypes(IfcProduct.class)) {
+	/**
+	 * push a collected product and its parent relation to the sink
+	 * 
+	 * @param product            the collected product or null if it was not collected
+	 * @param childrenWithParent guids of the products that already have a parent
+	 * @param sink               consumer of the collected objects
+	 */
+	private void pushProduct(CollectedProduct product, Set<String> childrenWithParent, MpgCollectionSink sink) {
+		if (product == null) {
+			return;
+		}
 
-			// ignore any elements that are irrelevant for the mpg calculations
-			if (!this.ignoredProducts.contains(product.getClass())) {
+		// all properties are set. create the mpg element
+		sink.objectCollected(product.elementId, product.object);
+		if (product.previousElement != null) {
+			reusedProducts.add(product);
+		}
 
-				if (StringUtils.isBlank(product.getGlobalId())) {
-					continue;
-				}
+		// collect child to parent relations
+		for (String parentGuid : product.parentGuids) {
+			if (!childrenWithParent.contains(product.guid) && parentGuid != product.guid) {
+				childrenWithParent.add(product.guid);
+				sink.parentRelationCollected(product.guid, parentGuid);
+			}
+		}
+	}
 
-				// collect child to parent relations
-				product.getDecomposes().stream()
-					.map(rel -> rel.getRelatingObject())
-					.filter(o -> o instanceof IfcProduct).map(o -> (IfcProduct) o).forEach(o -> {
-						if (!childToParentMap.containsKey(product.getGlobalId())
-								&& o.getGlobalId() != product.getGlobalId()) {
+	/**
+	 * collect the data of a single product without touching the object store.
+	 * Can be called concurrently for different products.
+	 * 
+	 * @param product the product to collect
+	 * @param index   index of the product in the products of the collection
+	 * @return the collected object or null if the product has no guid
+	 */
+	private CollectedProduct collectProduct(IfcProduct product, int index) {
+		statistics.increment(Counter.PRODUCTS_SEEN);
+		if (StringUtils.isBlank(product.getGlobalId())) {
+			statistics.increment(Counter.PRODUCTS_SKIPPED);
+			return null;
+		}
 
-							childToParentMap.put(product.getGlobalId(), o.getGlobalId());
+		List<String> parentGuids = product.getDecomposes().stream()
+				.map(rel -> rel.getRelatingObject())
+				.filter(o -> o instanceof IfcProduct)
+				.map(o -> ((IfcProduct) o).getGlobalId())
+				.collect(Collectors.toList());
+		String elementId = product.getName() + "-" + product.getGlobalId();
+
+		// reuse the object of a previous collection when its source data is unchanged
+		// the materials are timed as one call per product, including this resolution
+		long start = statistics.start();
+		ResolvedMaterials productMaterials = resolveMaterials(product);
+		long materialNanos = statistics.elapsed(start);
+		Long fingerprint = null;
+		List<Pair<String, Object>> properties = null;
+		if (fingerprintProducts) {
+			// the property values are read for the fingerprint anyway, so they are kept
+			// rather than resolved a second time
+			List<Pair<String, Object>> resolved = new ArrayList<Pair<String, Object>>();
+			this.getPropertySetsFromIfcProduct(product, (name, value) -> resolved.add(Pair.of(name, value)));
+			start = statistics.start();
+			fingerprint = fingerprintProduct(product, parentGuids, productMaterials, resolved);
+			statistics.stop(Phase.FINGERPRINTS, start);
+			properties = resolved;
+		}
+		if (previousStore != null) {
+			MpgElement previousElement = previousStore.getElementByObjectGuid(product.getGlobalId());
+			MpgObject previousObject = previousElement == null ? null : previousElement.getMpgObject();
+			if (previousObject instanceof MpgObjectImpl
+					&& fingerprint.equals(((MpgObjectImpl) previousObject).getProductFingerprint())) {
+				statistics.increment(Counter.PRODUCTS_REUSED);
+				statistics.add(Phase.MATERIALS, materialNanos);
+				return new CollectedProduct(product.getGlobalId(), elementId, (MpgObjectImpl) previousObject,
+						parentGuids, previousElement);
+			}
+		}
 
-						} else {
-							if (o.getGlobalId() != product.getGlobalId()) {
-								System.out.println(">> " + product.getGlobalId() + ", " + o.getGlobalId());
-							}
-						}
-					});
-
-				MpgObjectImpl mpgObject = new MpgObjectImpl(product.getOid(), 
-						product.getGlobalId(), 
-						product.getName(),
-						product.getClass().getSimpleName(), "");
-
-				this.getPropertySetsFromIfcProduct(product, mpgObject);
-				MpgGeometry geom = getGeometryFromProduct(product);
-				if (geom.getVolume().isNaN()) {
-					// if the geomServer does not return a volume we have to try it through properties.
-					mpgObject.addTag(MpgInfoTagType.geometrySourceType, "Geometry from properties");
-					mpgObject.setGeometry(this.getGeometryFromPropertySet(product, mpgObject));
-				} else {
-					mpgObject.addTag(MpgInfoTagType.geometrySourceType, "Geometry from ifcopenShell");
-					mpgObject.setGeometry(geom);
-				}
+		MpgObjectImpl mpgObject = new MpgObjectImpl(product.getOid(), 
+				product.getGlobalId(), 
+				symbols.intern(product.getName()),
+				symbols.typeName(product.getClass()), "");
+		mpgObject.usePropertySchema(propertySchema);
+		mpgObject.setProductFingerprint(fingerprint);
+
+		if (properties != null) {
+			properties.forEach(prop -> mpgObject.addProperty(prop.getKey(), prop.getValue()));
+		} else if (eagerPropertySets) {
+			this.getPropertySetsFromIfcProduct(product, mpgObject::addProperty);
+		} else {
+			mpgObject.setDeferredProperties(deferPropertySets(index));
+		}
+
+		start = statistics.start();
+		MpgGeometry geom = getGeometryFromProduct(product);
+		statistics.stop(Phase.GEOMETRY, start);
+		if (geom.getVolume().isNaN()) {
+			// if the geomServer does not return a volume we have to try it through properties.
+			statistics.increment(Counter.GEOMETRY_FROM_PROPERTIES);
+			mpgObject.addTag(MpgInfoTagType.geometrySourceType, "Geometry from properties");
+			// reading the properties is timed as property sets
+			mpgObject.setGeometry(this.getGeometryFromPropertySet(product, mpgObject));
+		} else {
+			mpgObject.addTag(MpgInfoTagType.geometrySourceType, "Geometry from ifcopenShell");
+			mpgObject.setGeometry(geom);
+		}
+
+		// set Pset materials
+//		if (mpgObject.getProperties().containsKey("material")) {
+//			String mat = (String) (mpgObject.getProperties().get("material"));
+//			mpgObject.addMaterialSource(mat, null, "P_Set");
+//		}
+
+		// retrieve information and add found values to the various data objects
+		start = statistics.start();
+		this.getMaterialsFromIfcProduct(product, productMaterials, mpgObject);
+		statistics.add(Phase.MATERIALS, materialNanos + statistics.elapsed(start));
+		start = statistics.start();
+		this.getProductClassications(product, mpgObject);
+		statistics.stop(Phase.CLASSIFICATIONS, start);
+
+		// all properties are set.
+		return new CollectedProduct(product.getGlobalId(), elementId, mpgObject, parentGuids, null);
+	}
+
+	/**
+	 * determine a fingerprint of the ifc data an object is collected from: the
+	 * attributes, decomposition, property values, materials, classifications and
+	 * geometry of the product and its type.
+	 * 
+	 * @param product          the product to evaluate
+	 * @param parentGuids      guids of the products the product decomposes
+	 * @param productMaterials materials that are directly associated with the product
+	 * @param properties       the property values of the product and its type
+	 * @return a fingerprint that changes when any of the collected data changes
+	 */
+	private long fingerprintProduct(IfcProduct product, List<String> parentGuids, ResolvedMaterials productMaterials,
+			List<Pair<String, Object>> properties) {
+		MpgFingerprint fingerprint = new MpgFingerprint();
+		fingerprint.add(symbols.typeName(product.getClass())).add(product.getGlobalId()).add(product.getName());
+		parentGuids.forEach(fingerprint::add);
+
+		for (IfcRelDefines def : product.getIsDefinedBy()) {
+			if (def instanceof IfcRelDefinesByType) {
+				IfcTypeObject relatingType = ((IfcRelDefinesByType) def).getRelatingType();
+				fingerprint.add(relatingType.getGlobalId());
+				addToFingerprint(getCached(typeMaterials, relatingType, Counter.TYPE_CACHE_HITS, () -> resolveMaterials(relatingType)),
+						fingerprint);
+			}
+		}
+		properties.forEach(prop -> fingerprint.add(prop.getKey()).add(prop.getValue()));
+		addToFingerprint(productMaterials, fingerprint);
 
-				// set Pset materials
-//				if (mpgObject.getProperties().containsKey("material")) {
-//					String mat = (String) (mpgObject.getProperties().get("material"));
-//					mpgObject.addMaterialSource(mat, null, "P_Set");
-//				}
-
-				// retrieve information and add found values to the various data objects
-				this.getMaterialsFromIfcProduct(product, mpgObject);
-				this.getProductClassications(product, mpgObject);
-				
-				// all properties are set. add it to the store.
-				// create the mpg element
-				String newMpgElementId = product.getName() + "-" + product.getGlobalId();
-				MpgElement newMpgElement = this.objectStore.addElement(newMpgElementId);
-
-				objectStore.getObjects().add(mpgObject);
-				newMpgElement.setMpgObject(mpgObject);
+		EList<IfcRelAssociates> associates = product.getHasAssociations();
+		if (associates != null) {
+			for (IfcRelAssociates ifcRelAssociates : associates) {
+				if (ifcRelAssociates instanceof IfcRelAssociatesClassification) {
+					IfcClassificationNotationSelect relClass = ((IfcRelAssociatesClassification) ifcRelAssociates)
+							.getRelatingClassification();
+					if (relClass instanceof IfcClassificationReference) {
+						IfcClassificationReference relRef = (IfcClassificationReference) relClass;
+						fingerprint.add(relRef.getReferencedSource() == null ? null : relRef.getReferencedSource().getName());
+						fingerprint.add(relRef.getItemReference());
+					}
+				}
 			}
 		}
 
-		// set all parent child relations for elements
-		objectStore.reloadParentChildRelationShips(childToParentMap);
+		GeometryInfo geometry = product.getGeometry();
+		if (geometry != null) {
+			fingerprint.add(geometry.getVolume()).add(geometry.getAdditionalData());
+			Bounds bounds = geometry.getBoundsUntransformed();
+			if (bounds != null && bounds.getMin() != null && bounds.getMax() != null) {
+				fingerprint.add(bounds.getMin().getX()).add(bounds.getMin().getY()).add(bounds.getMin().getZ());
+				fingerprint.add(bounds.getMax().getX()).add(bounds.getMax().getY()).add(bounds.getMax().getZ());
+			}
+		}
+		return fingerprint.getValue();
+	}
 
-		return objectStore;
+	private static void addToFingerprint(ResolvedMaterials materials, MpgFingerprint fingerprint) {
+		fingerprint.add(materials.matSource);
+		materials.materials.forEach((oid, name) -> fingerprint.add(name));
+		for (MaterialLayerSet layerSet : materials.layerSets) {
+			for (int i = 0; i < layerSet.size(); i++) {
+				fingerprint.add(layerSet.names[i]).add(layerSet.thicknesses[i]);
+			}
+		}
 	}
 
 	/**
@@ -240,26 +636,20 @@ public class MpgIfcObjectCollector {
 		MpgGeometry geom = new MpgGeometry();
 
 		// first try to set the geometry by properties
-		Double vol = null;
-		if (mpgObject.getProperties().containsKey("volume")) {
-			vol = ((double) mpgObject.getProperties().get("volume"));
-		}
-		if (mpgObject.getProperties().containsKey("netvolume") && vol == null) {
-			vol = ((double) mpgObject.getProperties().get("netvolume"));
+		Double vol = mpgObject.getNumericProperty("volume");
+		if (vol == null) {
+			vol = mpgObject.getNumericProperty("netvolume");
 		}
 		if (vol != null) {
 			geom.setVolume(vol);
 		}
 
-		Double area = null;
-		if (mpgObject.getProperties().containsKey("grosssidearea")) {
-			area = ((double) mpgObject.getProperties().get("grosssidearea"));
-		}
-		if (mpgObject.getProperties().containsKey("area")) {
-			area = ((double) mpgObject.getProperties().get("area"));
+		Double area = mpgObject.getNumericProperty("area");
+		if (area == null) {
+			area = mpgObject.getNumericProperty("grosssidearea");
 		}
-		if (mpgObject.getProperties().containsKey("netarea") && area == null) {
-			area = ((double) mpgObject.getProperties().get("netarea"));
+		if (area == null) {
+			area = mpgObject.getNumericProperty("netarea");
 		}
 		if (area != null) {
 			geom.setFloorArea(area);
@@ -284,17 +674,17 @@ public class MpgIfcObjectCollector {
 			geom.setVolume(this.convertVolume(geometry.getVolume()));
 
 			try {
-				JsonNode geomData = mapper.readTree(geometry.getAdditionalData());
-				if (geomData != null && geomData.size() > 0) {
+				GeometryData geomData = geometryDataParser.parse(geometry.getAdditionalData());
+				if (!geomData.isEmpty()) {
 					geom.setIsComplete(true);
 					Bounds bounds = geometry.getBoundsUntransformed();
 					double x_dir = this.convertLength(bounds.getMax().getX() - bounds.getMin().getX());
 					double y_dir = this.convertLength(bounds.getMax().getY() - bounds.getMin().getY());
 					double z_dir = this.convertLength(bounds.getMax().getZ() - bounds.getMin().getZ());
 					
-					//double largest_face_area = geomData.get("LARGEST_FACE_AREA").asDouble();
+					//double largest_face_area = geomData.getLargestFaceArea();
 										
-					geom.setFloorArea(this.convertArea(geomData.get("SURFACE_AREA_ALONG_Z").asDouble()));
+					geom.setFloorArea(this.convertArea(geomData.getSurfaceAreaAlongZ()));
 					geom.setDimensions(x_dir, y_dir, z_dir);
 				}
 			} catch (IOException e) {
@@ -318,58 +708,88 @@ public class MpgIfcObjectCollector {
 	}
 
 	/**
-	 * retrieve the property sets from the ifc product and any present templates
+	 * @param index index of a product in the products of the current collection
+	 * @return a source that resolves the property sets of the product. Fails when
+	 *         the model has been released.
+	 */
+	private MpgPropertySource deferPropertySets(int index) {
+		ProductReferences references = productReferences;
+		return target -> {
+			List<IfcProduct> products = references.products;
+			if (products == null) {
+				throw new IllegalStateException(
+						"the property sets of the object were not resolved before its ifc model was released");
+			}
+			this.getPropertySetsFromIfcProduct(products.get(index), target);
+		};
+	}
+
+	/**
+	 * retrieve the property sets from the ifc product and any present templates.
+	 * Is called during the collection in eager mode, otherwise when the properties
+	 * of the object are first accessed.
 	 * 
 	 * @param product
-	 * @param mpgObject
+	 * @param target  consumer of the found properties
 	 */
-	private void getPropertySetsFromIfcProduct(IfcProduct product, MpgObjectImpl mpgObject) {
+	private void getPropertySetsFromIfcProduct(IfcProduct product, BiConsumer<String, Object> target) {
+		long start = statistics.start();
 		// try get the materials from the relating type
 		for (IfcRelDefines def : product.getIsDefinedBy()) {
 			if (def instanceof IfcRelDefinesByType) {
 				IfcRelDefinesByType typeDefRel = (IfcRelDefinesByType) def;
 				IfcTypeObject relatingType = typeDefRel.getRelatingType();
-				getPropertySetFromTypeObject(relatingType, mpgObject);
+				getPropertySetFromTypeObject(relatingType, target);
 			}
 			if (def instanceof IfcRelDefinesByProperties) {
 				IfcRelDefinesByProperties props = (IfcRelDefinesByProperties) def;
 				IfcPropertySetDefinition propSet = props.getRelatingPropertyDefinition();
-				resolvePropertySetAndAddProperties(propSet, mpgObject);
+				resolvePropertySetAndAddProperties(propSet, target);
 			}
 		}
+		statistics.stop(Phase.PROPERTY_SETS, start);
 	}
 
 	/**
 	 * Retrieve the Property sets from any linked IfcTypeObject and pass this on to
-	 * the Property collection method
+	 * the Property collection method. The properties of a type object are resolved
+	 * once per collection and applied to every product of that type.
 	 * 
 	 * @param typeObjecttemplate type to retrieve
-	 * @param mpgObject          mpgObject to add properties to
+	 * @param target             consumer of the found properties
 	 */
-	private void getPropertySetFromTypeObject(IfcTypeObject typeObject, MpgObjectImpl mpgObject) {
-		EList<IfcPropertySetDefinition> propertySets = typeObject.getHasPropertySets();
-		if (!propertySets.isEmpty()) {
-			for (IfcPropertySetDefinition propSet : propertySets) {
-				resolvePropertySetAndAddProperties(propSet, mpgObject);
+	private void getPropertySetFromTypeObject(IfcTypeObject typeObject, BiConsumer<String, Object> target) {
+		getTypeProperties(typeObject).forEach(prop -> target.accept(prop.getKey(), prop.getValue()));
+	}
+
+	/**
+	 * @return the resolved property entries of a type object
+	 */
+	private List<Pair<String, Object>> getTypeProperties(IfcTypeObject typeObject) {
+		return getCached(typeProperties, typeObject, Counter.TYPE_CACHE_HITS, () -> {
+			List<Pair<String, Object>> res = new ArrayList<Pair<String, Object>>();
+			for (IfcPropertySetDefinition propSet : typeObject.getHasPropertySets()) {
+				resolvePropertySetAndAddProperties(propSet, (name, value) -> res.add(Pair.of(name, value)));
 			}
-		}
+			return res;
+		});
 	}
 
-	private void resolvePropertySetAndAddProperties(IfcPropertySetDefinition propSet, MpgObjectImpl mpgObject) {
+	private void resolvePropertySetAndAddProperties(IfcPropertySetDefinition propSet, BiConsumer<String, Object> target) {
 		if (propSet instanceof IfcElementQuantity) {
-			addPropertiesFromPropertySetDefinition((IfcElementQuantity) propSet, mpgObject);
+			addPropertiesFromPropertySetDefinition((IfcElementQuantity) propSet, target);
 		} else if (propSet instanceof IfcPropertySet) {
-			addPropertiesFromPropertySetDefinition((IfcPropertySet) propSet, mpgObject);
+			addPropertiesFromPropertySetDefinition((IfcPropertySet) propSet, target);
 		} else {
 			// System.out.println("found unidentified propertyset definition");
 		}
 	}
 
-	private void addPropertiesFromPropertySetDefinition(IfcElementQuantity quantities, MpgObjectImpl mpgObject) {
+	private void addPropertiesFromPropertySetDefinition(IfcElementQuantity quantities, BiConsumer<String, Object> target) {
 		for (IfcPhysicalQuantity physQuant : quantities.getQuantities()) {
 			if (physQuant instanceof IfcPhysicalSimpleQuantity) {
 				IfcPhysicalSimpleQuantity simpleQuant = (IfcPhysicalSimpleQuantity) physQuant;
-				String name = simpleQuant.getName().toLowerCase();
+				String name = symbols.lowerCase(simpleQuant.getName());
 				Object value = null;
 
 				if (simpleQuant instanceof IfcQuantityVolume) {
@@ -381,18 +801,18 @@ public class MpgIfcObjectCollector {
 				}
 
 				if (value != null) {
-					mpgObject.addProperty(name, value);
+					target.accept(name, value);
 				}
 			}
 		}
 	}
 
-	private void addPropertiesFromPropertySetDefinition(IfcPropertySet defs, MpgObjectImpl mpgObject) {
+	private void addPropertiesFromPropertySetDefinition(IfcPropertySet defs, BiConsumer<String, Object> target) {
 
 		for (IfcProperty prop : defs.getHasProperties()) {
 			if (prop instanceof IfcPropertySingleValue) {
 				IfcPropertySingleValue valProp = (IfcPropertySingleValue) prop;
-				String name = valProp.getName().toLowerCase();
+				String name = symbols.lowerCase(valProp.getName());
 
 				IfcValue ifcValue = (valProp.getNominalValue());
 				Object value = null;
@@ -406,7 +826,7 @@ public class MpgIfcObjectCollector {
 				}
 
 				if (value != null) {
-					mpgObject.addProperty(name, value);
+					target.accept(name, value);
 				}
 			}
 		}
@@ -416,20 +836,22 @@ public class MpgIfcObjectCollector {
 	 * Retrieve the materials and layers from the IfcProduct object and store these
 	 * as MpgMaterial objects
 	 * 
-	 * @param ifcProduct The ifcProduct object to retrieve the material names from
-	 * @param mpgObject  The object to add the found materials to.
+	 * @param ifcProduct       The ifcProduct object to retrieve the material names from
+	 * @param productMaterials The materials that are directly associated with the product
+	 * @param mpgObject        The object to add the found materials to.
 	 */
-	private void getMaterialsFromIfcProduct(IfcProduct ifcProduct, MpgObjectImpl mpgObject) {
+	private void getMaterialsFromIfcProduct(IfcProduct ifcProduct, ResolvedMaterials productMaterials,
+			MpgObjectImpl mpgObject) {
 
 		// try get the materials directly from the product
-		getMaterialsFromObject(ifcProduct, mpgObject);
+		addMaterials(productMaterials, mpgObject);
 
 		// try get the materials from the relating type
 		for (IfcRelDefines def : ifcProduct.getIsDefinedBy()) {
 			if (def instanceof IfcRelDefinesByType) {
 				IfcRelDefinesByType typeDefRel = (IfcRelDefinesByType) def;
 				IfcTypeObject relatingType = typeDefRel.getRelatingType();
-				getMaterialsFromObject(relatingType, mpgObject);
+				addMaterials(getCached(typeMaterials, relatingType, Counter.TYPE_CACHE_HITS, () -> resolveMaterials(relatingType)), mpgObject);
 			}
 		}
 	}
@@ -460,19 +882,24 @@ public class MpgIfcObjectCollector {
 		}
 	}
 
-	private void getMaterialsFromObject(IfcObjectDefinition sourceObject, MpgObjectImpl targetObject) {
+	/**
+	 * resolve the materials and layers that are associated with an object
+	 * definition
+	 * 
+	 * @param sourceObject IfcObjectDefinition from ifc file
+	 * @return the materials and layers of the object
+	 */
+	private ResolvedMaterials resolveMaterials(IfcObjectDefinition sourceObject) {
+
+		String matSource = null;
+		if (sourceObject instanceof IfcTypeProduct) {
+			matSource = "type";
+		}
+		ResolvedMaterials res = new ResolvedMaterials(matSource);
 
 		EList<IfcRelAssociates> associates = sourceObject.getHasAssociations();
 		if (associates != null && !associates.isEmpty()) {
 
-			String matSource = null;
-			if (sourceObject instanceof IfcTypeProduct) {
-				matSource = "type";
-			}
-
-			List<Triple<String, String, Double>> productLayers = new ArrayList<Triple<String, String, Double>>();
-			Map<String, String> productMaterials = new HashMap<String, String>();
-
 			for (IfcRelAssociates ifcRelAssociates : associates) {
 
 				if (ifcRelAssociates instanceof IfcRelAssociatesMaterial) {
@@ -482,42 +909,59 @@ public class MpgIfcObjectCollector {
 					// try determine what the derived interface of the IfcMaterialSelect is
 					if (relatingMaterial instanceof IfcMaterial) {
 						IfcMaterial mat = (IfcMaterial) relatingMaterial;
-						productMaterials.put(Long.toString(mat.getOid()), mat.getName());
+						res.materials.put(symbols.oid(mat.getOid()), symbols.intern(mat.getName()));
 					} else if (relatingMaterial instanceof IfcMaterialList) {
 						IfcMaterialList mats = (IfcMaterialList) relatingMaterial;
 						mats.getMaterials()
-								.forEach((mat) -> productMaterials.put(Long.toString(mat.getOid()), mat.getName()));
+								.forEach((mat) -> res.materials.put(symbols.oid(mat.getOid()),
+										symbols.intern(mat.getName())));
 					} else if (relatingMaterial instanceof IfcMaterialLayerSetUsage) {
-						productLayers.addAll(getMaterialLayerList((IfcMaterialLayerSetUsage) relatingMaterial));
+						res.layerSets.add(getMaterialLayerSet((IfcMaterialLayerSetUsage) relatingMaterial));
 					} else if (relatingMaterial instanceof IfcMaterialLayerSet) {
-						productLayers.addAll(getMaterialLayerList((IfcMaterialLayerSet) relatingMaterial));
+						res.layerSets.add(getMaterialLayerSet((IfcMaterialLayerSet) relatingMaterial));
 					} else if (relatingMaterial instanceof IfcMaterialLayer) {
-						productLayers.addAll(getMaterialLayer((IfcMaterialLayer) relatingMaterial));
+						res.layerSets.add(getMaterialLayerSet((IfcMaterialLayer) relatingMaterial));
 					}
 				}
 			}
+		}
+		return res;
+	}
 
-			// check total volume matches up with found materials and thickness sums and
-			// adjust accordingly.
-			double totalThickness = productLayers.stream().collect(Collectors.summingDouble(o -> o.getRight()));
-
-			String matSourceDirect = (matSource != null) ? matSource : "direct";
-			// add separately listed materials
-			productMaterials.forEach((key, value) -> {
-				targetObject.addMaterialSource(value, key, matSourceDirect);
-			});
-
-			String matSourceLayer = (matSource != null) ? matSource : "layer";
-			// add layers and any materials that have been found with those layers
-			productLayers.forEach(layer -> {
-				String materialName = layer.getLeft();
-				String materialGuid = layer.getMiddle();
-				double vol = targetObject.getGeometry().getVolume();
-				double volumeRatio = layer.getRight() / totalThickness * vol;
-				double area = vol * volumeRatio / layer.getRight();
-				targetObject.addLayer(new MpgLayerImpl(volumeRatio, area, materialName, materialGuid));
-				targetObject.addMaterialSource(materialName, materialGuid, matSourceLayer);
-			});
+	/**
+	 * add resolved materials and layers to an object. The layer volumes are
+	 * determined from the geometry of the object.
+	 * 
+	 * @param resolved     the materials and layers of the object or its type
+	 * @param targetObject MpgObject to add the materials and layers to
+	 */
+	private void addMaterials(ResolvedMaterials resolved, MpgObjectImpl targetObject) {
+		// check total volume matches up with found materials and thickness sums and
+		// adjust accordingly. A single layer set can use its precomputed ratios.
+		double totalThickness = 0.0;
+		for (MaterialLayerSet layerSet : resolved.layerSets) {
+			totalThickness += layerSet.totalThickness;
+		}
+		boolean isSingleLayerSet = resolved.layerSets.size() == 1;
+
+		String matSourceDirect = (resolved.matSource != null) ? resolved.matSource : "direct";
+		// add separately listed materials
+		resolved.materials.forEach((key, value) -> {
+			targetObject.addMaterialSource(value, key, matSourceDirect);
+		});
+
+		String matSourceLayer = (resolved.matSource != null) ? resolved.matSource : "layer";
+		// add layers and any materials that have been found with those layers
+		double vol = targetObject.getGeometry().getVolume();
+		for (MaterialLayerSet layerSet : resolved.layerSets) {
+			for (int i = 0; i < layerSet.size(); i++) {
+				double thickness = layerSet.thicknesses[i];
+				double ratio = isSingleLayerSet ? layerSet.ratios[i] : thickness / totalThickness;
+				double volumeRatio = ratio * vol;
+				double area = vol * volumeRatio / thickness;
+				targetObject.addLayer(new MpgLayerImpl(volumeRatio, area, layerSet.names[i], layerSet.ids[i]));
+				targetObject.addMaterialSource(layerSet.names[i], layerSet.ids[i], matSourceLayer);
+			}
 		}
 	}
 
@@ -525,43 +969,57 @@ public class MpgIfcObjectCollector {
 	 * get the relevant data from a material layer object
 	 * 
 	 * @param layer the material layer object to parse
-	 * @return an object with material layer information. 
+	 * @return a layer set with a single layer. 
 	 * return empty values for matname and matid when no material is defined
 	 */
-	private List<Triple<String, String, Double>> getMaterialLayer(IfcMaterialLayer layer) {
-		IfcMaterial material = layer.getMaterial();
-		List<Triple<String, String, Double>> res = new ArrayList<Triple<String, String, Double>>();
-		MutableTriple<String, String, Double> triple = new MutableTriple<String, String, Double>(
-				material != null ? material.getName() : "",
-				material != null ? Long.toString(material.getOid()) : "",
-				layer.getLayerThickness());
-
-		res.add(triple);
-		return res;
+	private MaterialLayerSet getMaterialLayerSet(IfcMaterialLayer layer) {
+		return getCached(layerSets, layer, Counter.LAYER_SET_CACHE_HITS, () -> new MaterialLayerSet(Arrays.asList(layer), symbols));
 	}
 
 	/**
-	 * Get the material names from a generic ifcMaterialLayerSet
+	 * Get the normalized layers of a generic ifcMaterialLayerSet
 	 * 
 	 * @param layerSet ifcLayerSet object
-	 * @return a list of material names and matching thickness.
+	 * @return the material names, ids, thicknesses and thickness ratios of the layers
 	 */
-	private List<Triple<String, String, Double>> getMaterialLayerList(IfcMaterialLayerSet layerSet) {
-		return layerSet.getMaterialLayers().stream().flatMap((layer) -> getMaterialLayer(layer).stream())
-				.collect(Collectors.toList());
+	private MaterialLayerSet getMaterialLayerSet(IfcMaterialLayerSet layerSet) {
+		return getCached(layerSets, layerSet, Counter.LAYER_SET_CACHE_HITS, () -> new MaterialLayerSet(layerSet.getMaterialLayers(), symbols));
 	}
 
 	/**
 	 * polymorphic method of the MaterialLayerSet implementation.
 	 * 
 	 * @param layerSetUsage ifcLayerSetUsage object
-	 * @return a list of material names
+	 * @return the normalized layers of the used layer set
 	 */
-	private List<Triple<String, String, Double>> getMaterialLayerList(IfcMaterialLayerSetUsage layerSetUsage) {
-		return getMaterialLayerList(layerSetUsage.getForLayerSet());
+	private MaterialLayerSet getMaterialLayerSet(IfcMaterialLayerSetUsage layerSetUsage) {
+		return getMaterialLayerSet(layerSetUsage.getForLayerSet());
+	}
+
+	/**
+	 * get a value of a per collection cache that is keyed on the oid of the
+	 * source object. Objects without an oid are resolved every time.
+	 */
+	private <T> T getCached(ConcurrentHashMap<Long, T> cache, IdEObject source, Counter hits, Supplier<T> resolver) {
+		if (source.getOid() <= 0) {
+			return resolver.get();
+		}
+		T cached = cache.get(source.getOid());
+		if (cached != null) {
+			statistics.increment(hits);
+			return cached;
+		}
+		return cache.computeIfAbsent(source.getOid(), oid -> resolver.get());
 	}
 
 	// ---------- Standard getters and setters -------------
+	/**
+	 * @return the phase timers and counters of all collections of this collector
+	 */
+	public MpgCollectionStatistics getStatistics() {
+		return statistics;
+	}
+
 	public AreaUnit getAreaUnit() {
 		return areaUnit;
 	}
@@ -574,4 +1032,190 @@ public class MpgIfcObjectCollector {
 		return lengthUnit;
 	}
 
+	public MpgProductFilter getProductFilter() {
+		return productFilter;
+	}
+
+	/**
+	 * set the filter that determines which products of a model are collected
+	 * 
+	 * @param productFilter filter on the product types
+	 */
+	public void setProductFilter(MpgProductFilter productFilter) {
+		this.productFilter = productFilter;
+	}
+
+	public boolean getEagerPropertySets() {
+		return eagerPropertySets;
+	}
+
+	/**
+	 * By default the property sets of a product are resolved when the properties
+	 * of its object are first accessed, which requires the ifc model to be
+	 * available and not released at that time. In eager mode all property sets are
+	 * resolved during the collection.
+	 * 
+	 * @param eagerPropertySets true to resolve all property sets during the
+	 *                          collection
+	 */
+	public void setEagerPropertySets(boolean eagerPropertySets) {
+		this.eagerPropertySets = eagerPropertySets;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * set the number of threads that collect the products of a model. Models
+	 * with only a few products are always collected sequentially. The threads
+	 * only read the model, which is safe for a model that is loaded completely
+	 * (as the BimBot services request with preloadCompleteModel). A lazily loaded
+	 * model resolves its objects on first access and should be collected
+	 * sequentially.
+	 * 
+	 * @param parallelism number of threads, 1 to collect sequentially
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism should be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * the materials (by material oid) and layer sets that are associated with a
+	 * product or type object
+	 */
+	private static class ResolvedMaterials {
+		private final String matSource;
+		private final Map<String, String> materials = new HashMap<String, String>();
+		private final List<MaterialLayerSet> layerSets = new ArrayList<MaterialLayerSet>();
+
+		ResolvedMaterials(String matSource) {
+			this.matSource = matSource;
+		}
+	}
+
+	/**
+	 * the material names, material ids and thicknesses of the layers of a layer
+	 * set together with the ratio of each layer to the total thickness
+	 */
+	private static class MaterialLayerSet {
+		private final String[] names;
+		private final String[] ids;
+		private final double[] thicknesses;
+		private final double[] ratios;
+		private final double totalThickness;
+
+		MaterialLayerSet(List<IfcMaterialLayer> layers, MpgSymbolTable symbols) {
+			names = new String[layers.size()];
+			ids = new String[layers.size()];
+			thicknesses = new double[layers.size()];
+			ratios = new double[layers.size()];
+
+			double total = 0.0;
+			for (int i = 0; i < layers.size(); i++) {
+				IfcMaterialLayer layer = layers.get(i);
+				IfcMaterial material = layer.getMaterial();
+				names[i] = material != null ? symbols.intern(material.getName()) : "";
+				ids[i] = material != null ? symbols.oid(material.getOid()) : "";
+				thicknesses[i] = layer.getLayerThickness();
+				total += thicknesses[i];
+			}
+			totalThickness = total;
+			for (int i = 0; i < thicknesses.length; i++) {
+				ratios[i] = thicknesses[i] / totalThickness;
+			}
+		}
+
+		int size() {
+			return names.length;
+		}
+	}
+
+	/**
+	 * the products of the current collection until {@link #releaseModel()}
+	 */
+	private static class ProductReferences {
+		private volatile List<IfcProduct> products;
+
+		private ProductReferences(List<IfcProduct> products) {
+			this.products = products;
+		}
+	}
+
+	private static class PendingSnapshot {
+		private final MpgStoreSnapshotCache cache;
+		private final String variant;
+		private final long checksum;
+
+		private PendingSnapshot(MpgStoreSnapshotCache cache, String variant, long checksum) {
+			this.cache = cache;
+			this.variant = variant;
+			this.checksum = checksum;
+		}
+	}
+
+	/**
+	 * the data of a single product that is collected before it is added to the
+	 * store
+	 */
+	private static class CollectedProduct {
+		private final String guid;
+		private final String elementId;
+		private final MpgObjectImpl object;
+		private final List<String> parentGuids;
+		// element of the previous store if the object is reused
+		private final MpgElement previousElement;
+
+		CollectedProduct(String guid, String elementId, MpgObjectImpl object, List<String> parentGuids,
+				MpgElement previousElement) {
+			this.guid = guid;
+			this.elementId = elementId;
+			this.object = object;
+			this.parentGuids = parentGuids;
+			this.previousElement = previousElement;
+		}
+	}
+
+	/**
+	 * collects a range of products into the matching range of the result array by
+	 * splitting the range until it is small enough.
+	 */
+	private class CollectProductsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<IfcProduct> products;
+		// index of the first product in the products of the collection
+		private final int offset;
+		private final CollectedProduct[] results;
+		private final int from;
+		private final int to;
+		private final int batchSize;
+
+		CollectProductsTask(List<IfcProduct> products, int offset, CollectedProduct[] results, int from, int to,
+				int batchSize) {
+			this.products = products;
+			this.offset = offset;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= batchSize) {
+				for (int i = from; i < to; i++) {
+					results[i] = collectProduct(products.get(i), offset + i);
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CollectProductsTask(products, offset, results, from, mid, batchSize),
+						new CollectProductsTask(products, offset, results, mid, to, batchSize));
+			}
+		}
+	}
+
 }
@@ -0,0 +1,231 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opensourcebim.mapping.NmdMappingType;
+
+/**
+ * Propagates mappings through the decomposition hierarchy of an object store.
+ * For every object the number of (recursively) mapped children is kept, so a
+ * parent can be checked for an indirect mapping through its children without
+ * walking its subtree. The counts are built on first use after the hierarchy
+ * changed and are updated on every mapping change after that.
+ */
+class MpgMappingPropagation {
+
+	private final MpgObjectStoreImpl store;
+	private final HashMap<String, Coverage> coverage;
+	private boolean isValid = false;
+
+	MpgMappingPropagation(MpgObjectStoreImpl store) {
+		this.store = store;
+		this.coverage = new HashMap<String, Coverage>();
+	}
+
+	/**
+	 * mark the counts as outdated after a change in the hierarchy or in the
+	 * element to object relations.
+	 */
+	void invalidate() {
+		isValid = false;
+		coverage.clear();
+	}
+
+	/**
+	 * set the mapping of an element if the parent or child relation ship mapping
+	 * has changed
+	 *
+	 * @param globalId guid of the mpgobject to start from
+	 * @param flag     flag to indicate whether the map was set (true) or unset
+	 *                 (false)
+	 */
+	void toggleMappingDependencies(String globalId, boolean flag) {
+		ensureValid();
+		List<MpgElement> children = allChildElementsByGuid(globalId);
+		List<MpgElement> parents = allParentElementsByGuid(globalId);
+
+		if (flag) {
+			// override all the children mappings
+			children.forEach(el -> {
+				el.setMappingMethod(NmdMappingType.IndirectThroughParent);
+				el.removeProductCards();
+			});
+
+			parents.forEach(el -> {
+				if (el.getMappingMethod() == NmdMappingType.None && allChildrenAreMapped(el)) {
+					el.setMappingMethod(NmdMappingType.IndirectThroughChildren);
+				}
+			});
+		} else {
+			// revert all hierarchical child mappings
+			// (as there can only be a single parent with a direct mapping)
+			children.forEach(el -> {
+				if (el.getMappingMethod() == NmdMappingType.IndirectThroughParent) {
+					el.setMappingMethod(NmdMappingType.None);
+				}
+			});
+			// any parents that had a indirect through children mapping will be reverted
+			parents.forEach(el -> {
+				if (el.getMappingMethod() == NmdMappingType.IndirectThroughChildren) {
+					el.setMappingMethod(NmdMappingType.None);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Update the mapped children counts of the ancestors of an element after its
+	 * mapping method changed. The walk stops at the first ancestor of which the
+	 * coverage does not change.
+	 */
+	void mappingChanged(MpgElement element) {
+		if (!isValid || element.getMpgObject() == null) {
+			return;
+		}
+
+		HashSet<String> visited = new HashSet<String>();
+		String guid = element.getMpgObject().getGlobalId();
+		while (guid != null && visited.add(guid)) {
+			Coverage node = coverage.get(guid);
+			if (node == null) {
+				return;
+			}
+			boolean covered = isCovered(guid, node);
+			if (covered == node.covered) {
+				return;
+			}
+			node.covered = covered;
+
+			String parentId = store.getParentGuid(guid);
+			if (StringUtils.isBlank(parentId) || !coverage.containsKey(parentId)) {
+				return;
+			}
+			coverage.get(parentId).coveredChildren += covered ? 1 : -1;
+			guid = parentId;
+		}
+	}
+
+	/**
+	 * Check whether all children of an element are mapped, either directly or
+	 * through their own children.
+	 *
+	 * @param el MpgElement to check hierarchy of
+	 * @return a flag to indicate that all chidren have a mapping
+	 */
+	boolean allChildrenAreMapped(MpgElement el) {
+		ensureValid();
+		Coverage node = el.getMpgObject() == null ? null : coverage.get(el.getMpgObject().getGlobalId());
+		return node != null && node.allChildrenCovered();
+	}
+
+	/**
+	 * get a collection of MpgElements that are higher up in the hierarchy than the
+	 * input element guid
+	 *
+	 * @param globalId guid to start search
+	 * @return collection of elements that have the input guid as a (recursive)
+	 *         child, ordered from the direct parent upwards
+	 */
+	List<MpgElement> allParentElementsByGuid(String globalId) {
+		List<MpgElement> elements = new ArrayList<MpgElement>();
+		HashSet<String> visited = new HashSet<String>();
+		String parentId = store.getParentGuid(globalId);
+		while (!StringUtils.isBlank(parentId) && visited.add(parentId)) {
+			MpgElement parent = store.getElementByObjectGuid(parentId);
+			if (parent != null) {
+				elements.add(parent);
+			}
+			parentId = store.getParentGuid(parentId);
+		}
+		return elements;
+	}
+
+	/**
+	 * Get a collection of elements that are down in the hierarchy than the input guid
+	 *
+	 * @param globalId guid to start from
+	 * @return a list of elements that are a (recursive) child of the input guid,
+	 *         ordered by their depth in the hierarchy
+	 */
+	List<MpgElement> allChildElementsByGuid(String globalId) {
+		List<MpgElement> elements = new ArrayList<MpgElement>();
+		HashSet<String> visited = new HashSet<String>();
+		ArrayDeque<String> queue = new ArrayDeque<String>();
+		queue.add(globalId);
+		visited.add(globalId);
+		while (!queue.isEmpty()) {
+			for (MpgObject child : store.getChildList(queue.poll())) {
+				if (child.getGlobalId() == null || !visited.add(child.getGlobalId())) {
+					continue;
+				}
+				MpgElement el = store.getElementByObjectGuid(child.getGlobalId());
+				if (el != null) {
+					elements.add(el);
+				}
+				queue.add(child.getGlobalId());
+			}
+		}
+		return elements;
+	}
+
+	private void ensureValid() {
+		if (!isValid) {
+			coverage.clear();
+			for (MpgObject obj : store.getObjects()) {
+				buildCoverage(obj.getGlobalId());
+			}
+			isValid = true;
+		}
+	}
+
+	/**
+	 * determine the coverage of an object after all of its children (post-order)
+	 */
+	private Coverage buildCoverage(String guid) {
+		if (guid == null) {
+			return new Coverage();
+		}
+		Coverage node = coverage.get(guid);
+		if (node != null) {
+			return node;
+		}
+
+		// add the node before visiting the children to stop on cyclic decompositions
+		node = new Coverage();
+		coverage.put(guid, node);
+
+		List<MpgObject> children = store.getChildList(guid);
+		node.children = children.size();
+		for (MpgObject child : children) {
+			if (buildCoverage(child.getGlobalId()).covered) {
+				node.coveredChildren++;
+			}
+		}
+		node.covered = isCovered(guid, node);
+		return node;
+	}
+
+	/**
+	 * an object is covered when its element has a mapping or when all its children
+	 * are covered.
+	 */
+	private boolean isCovered(String guid, Coverage node) {
+		MpgElement el = store.getElementByObjectGuid(guid);
+		return el != null && (el.hasMapping() || node.allChildrenCovered());
+	}
+
+	private static class Coverage {
+		private int children = 0;
+		private int coveredChildren = 0;
+		private boolean covered = false;
+
+		boolean allChildrenCovered() {
+			return children > 0 && coveredChildren == children;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Inverted indexes of an object store from material names to layers and from
+ * product types to objects. Layers and materials are only appended to objects,
+ * so per object only the number of indexed layers and materials is kept and a
+ * change notification indexes the appended ones. Any other change of these
+ * lists, detected on their size and last indexed element, rebuilds the
+ * indexes. Material names are only counted for objects that are linked to an
+ * element.
+ */
+class MpgMaterialIndex {
+
+	private final IdentityHashMap<MpgObject, Entry> entries;
+	private final HashMap<String, List<MpgObject>> objectsByType;
+	private final HashMap<String, List<MpgLayer>> layersByMaterial;
+	private final HashMap<String, Double> volumeByMaterial;
+	private final HashSet<String> outdatedVolumes;
+	private final LinkedHashMap<String, Integer> elementMaterialNames;
+
+	MpgMaterialIndex() {
+		entries = new IdentityHashMap<MpgObject, Entry>();
+		objectsByType = new HashMap<String, List<MpgObject>>();
+		layersByMaterial = new HashMap<String, List<MpgLayer>>();
+		volumeByMaterial = new HashMap<String, Double>();
+		outdatedVolumes = new HashSet<String>();
+		elementMaterialNames = new LinkedHashMap<String, Integer>();
+	}
+
+	/**
+	 * register an object that is added to the objects of the store. An object
+	 * added multiple times will be counted multiple times.
+	 */
+	void objectAdded(MpgObject obj) {
+		Entry entry = getEntry(obj);
+		entry.occurrences++;
+		addType(obj, entry.type);
+		addLayers(obj.getLayers().subList(0, entry.layerCount), 1);
+	}
+
+	/**
+	 * register whether an object is linked to an element
+	 */
+	void elementLinked(MpgObject obj, boolean isLinked) {
+		Entry entry = getEntry(obj);
+		if (entry.isLinked != isLinked) {
+			entry.isLinked = isLinked;
+			countMaterialNames(obj.getListedMaterials().subList(0, entry.materialCount), isLinked ? 1 : -1);
+		}
+	}
+
+	/**
+	 * update the indexes after the type, layers or materials of an object have
+	 * changed.
+	 */
+	void objectChanged(MpgObject obj) {
+		Entry entry = entries.get(obj);
+		if (entry == null) {
+			return;
+		}
+
+		String type = obj.getObjectType();
+		if (!(type == null ? entry.type == null : type.equals(entry.type))) {
+			removeType(obj, entry.type);
+			entry.type = type;
+			for (int i = 0; i < entry.occurrences; i++) {
+				addType(obj, type);
+			}
+		}
+
+		List<MpgLayer> layers = obj.getLayers();
+		if (!isAppendedTo(layers, entry.layerCount, entry.lastLayer)) {
+			rebuildLayers();
+		} else if (layers.size() > entry.layerCount) {
+			addLayers(layers.subList(entry.layerCount, layers.size()), entry.occurrences);
+			entry.layerCount = layers.size();
+			entry.lastLayer = layers.get(layers.size() - 1);
+		}
+
+		List<MaterialSource> materials = obj.getListedMaterials();
+		if (!isAppendedTo(materials, entry.materialCount, entry.lastMaterial)) {
+			rebuildMaterialNames();
+		} else if (materials.size() > entry.materialCount) {
+			if (entry.isLinked) {
+				countMaterialNames(materials.subList(entry.materialCount, materials.size()), 1);
+			}
+			entry.materialCount = materials.size();
+			entry.lastMaterial = materials.get(materials.size() - 1);
+		}
+	}
+
+	void clear() {
+		entries.clear();
+		objectsByType.clear();
+		layersByMaterial.clear();
+		volumeByMaterial.clear();
+		outdatedVolumes.clear();
+		elementMaterialNames.clear();
+	}
+
+	List<MpgObject> getObjectsByProductType(String productType) {
+		List<MpgObject> objects = productType == null ? null : objectsByType.get(productType);
+		return objects == null ? Collections.emptyList() : Collections.unmodifiableList(objects);
+	}
+
+	List<MpgLayer> getLayersByMaterialName(String materialName) {
+		List<MpgLayer> layers = materialName == null ? null : layersByMaterial.get(materialName);
+		return layers == null ? Collections.emptyList() : Collections.unmodifiableList(layers);
+	}
+
+	double getTotalVolumeOfMaterial(String materialName) {
+		if (materialName == null) {
+			return 0.0;
+		}
+		if (outdatedVolumes.remove(materialName)) {
+			double total = 0.0;
+			for (MpgLayer layer : getLayersByMaterialName(materialName)) {
+				total += layer.getVolume();
+			}
+			volumeByMaterial.put(materialName, total);
+		}
+		return volumeByMaterial.getOrDefault(materialName, 0.0);
+	}
+
+	/**
+	 * @return the distinct material names of all objects linked to an element
+	 */
+	Stream<String> getElementMaterialNames() {
+		return new ArrayList<String>(elementMaterialNames.keySet()).stream();
+	}
+
+	/**
+	 * get the entry of an object with an up to date snapshot
+	 */
+	private Entry getEntry(MpgObject obj) {
+		Entry entry = entries.get(obj);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(obj, entry);
+			objectChanged(obj);
+		}
+		return entry;
+	}
+
+	private void addType(MpgObject obj, String type) {
+		if (type != null) {
+			objectsByType.computeIfAbsent(type, k -> new ArrayList<MpgObject>()).add(obj);
+		}
+	}
+
+	private void removeType(MpgObject obj, String type) {
+		List<MpgObject> objects = type == null ? null : objectsByType.get(type);
+		if (objects != null) {
+			objects.removeIf(o -> o == obj);
+			if (objects.isEmpty()) {
+				objectsByType.remove(type);
+			}
+		}
+	}
+
+	private void addLayers(List<MpgLayer> layers, int times) {
+		for (MpgLayer layer : layers) {
+			String name = layer.getMaterialName();
+			if (name == null) {
+				continue;
+			}
+			List<MpgLayer> indexed = layersByMaterial.computeIfAbsent(name, k -> new ArrayList<MpgLayer>());
+			for (int i = 0; i < times; i++) {
+				indexed.add(layer);
+				if (!outdatedVolumes.contains(name)) {
+					volumeByMaterial.merge(name, layer.getVolume(), Double::sum);
+				}
+			}
+		}
+	}
+
+	/**
+	 * reindex the layers of all objects after layers have been removed or
+	 * replaced.
+	 */
+	private void rebuildLayers() {
+		layersByMaterial.clear();
+		volumeByMaterial.clear();
+		outdatedVolumes.clear();
+		for (Map.Entry<MpgObject, Entry> e : entries.entrySet()) {
+			List<MpgLayer> layers = e.getKey().getLayers();
+			Entry entry = e.getValue();
+			addLayers(layers, entry.occurrences);
+			entry.layerCount = layers.size();
+			entry.lastLayer = layers.isEmpty() ? null : layers.get(layers.size() - 1);
+		}
+	}
+
+	/**
+	 * recount the material names of all linked objects after materials have been
+	 * removed or replaced.
+	 */
+	private void rebuildMaterialNames() {
+		elementMaterialNames.clear();
+		for (Map.Entry<MpgObject, Entry> e : entries.entrySet()) {
+			List<MaterialSource> materials = e.getKey().getListedMaterials();
+			Entry entry = e.getValue();
+			if (entry.isLinked) {
+				countMaterialNames(materials, 1);
+			}
+			entry.materialCount = materials.size();
+			entry.lastMaterial = materials.isEmpty() ? null : materials.get(materials.size() - 1);
+		}
+	}
+
+	private void countMaterialNames(List<MaterialSource> materials, int delta) {
+		for (MaterialSource mat : materials) {
+			String name = mat.getName();
+			if (name != null && !name.isEmpty()) {
+				elementMaterialNames.merge(name, delta, (a, b) -> a + b == 0 ? null : a + b);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the list still starts with the indexed elements, based on
+	 *         the identity of the last indexed element
+	 */
+	private static boolean isAppendedTo(List<?> list, int indexedCount, Object lastIndexed) {
+		return list.size() >= indexedCount && (indexedCount == 0 || list.get(indexedCount - 1) == lastIndexed);
+	}
+
+	private static class Entry {
+		private int occurrences = 0;
+		private boolean isLinked = false;
+		private String type = null;
+		private int layerCount = 0;
+		private MpgLayer lastLayer = null;
+		private int materialCount = 0;
+		private MaterialSource lastMaterial = null;
+	}
+}
@@ -44,7 +44,14 @@ public interface MpgObject {
 	
 	void addTag(MpgInfoTagType tagType, String message);
 	
+	@JsonIgnore
+	MpgObjectStore getStore();
+	void setStore(MpgObjectStore store);
+	
 	String getValueHash();
+	@JsonIgnore
+	long getValueFingerprint();
+	boolean hasEqualValues(MpgObject mpgObject);
 	boolean copyMappingFromObject(MpgObject mpgObject);
 
 
@@ -1,10 +1,11 @@
 package org.opensourcebim.ifccollection;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -23,8 +24,14 @@ public class MpgObjectImpl implements MpgObject {
 	private String objectType;
 	private String parentId;
 
+	// null until a schema is assigned or the first property is added
 	@JsonIgnore
-	private Map<String, Object> properties;
+	private MpgPropertyBag properties;
+	// whether the schema of the properties is used by this object only
+	private boolean ownsPropertySchema = false;
+	// properties that are not resolved yet, null once they are added to the bag
+	@JsonIgnore
+	private volatile MpgPropertySource deferredProperties;
 	private List<MaterialSource> listedMaterials;
 
 	private MpgGeometry geometry;
@@ -32,13 +39,26 @@ public class MpgObjectImpl implements MpgObject {
 	private List<MpgInfoTag> tags;
 	private Set<NlsfbCode> nlsfbAlternatives;
 
+	@JsonIgnore
+	private MpgObjectStore store;
+
+	// fingerprint of the ifc data the object was collected from, null if unknown
+	private Long productFingerprint;
+
+	// cached fingerprint of the values that are used to group objects
+	private long valueFingerprint;
+	private boolean valueFingerprintIsValid = false;
+
+
 	public MpgObjectImpl(long objectId, String globalId, String objectName, String objectType, String parentId) {
 
 		this.objectId = objectId;
 		this.setGlobalId(globalId);
 		this.setObjectName(objectName);
 		if (objectType != null) {
-			objectType = objectType.replaceAll("Impl$", "");
+			if (objectType.endsWith("Impl")) {
+				objectType = objectType.substring(0, objectType.length() - "Impl".length());
+			}
 			this.setObjectType(objectType);
 		}
 		this.parentId = parentId;
@@ -52,7 +72,7 @@ public class MpgObjectImpl implements MpgObject {
 	
 	private void initializeCollections() {
 		mpgLayers = new BasicEList<MpgLayer>();
-		properties = new HashMap<String, Object>();
+		properties = null;
 		tags = new ArrayList<MpgInfoTag>();
 		this.listedMaterials = new BasicEList<MaterialSource>();
 		this.nlsfbAlternatives = new HashSet<NlsfbCode>();
@@ -61,6 +81,7 @@ public class MpgObjectImpl implements MpgObject {
 	@Override
 	public void addLayer(MpgLayer mpgLayer) {
 		mpgLayers.add(mpgLayer);
+		notifyChanged();
 	}
 
 	@Override
@@ -80,6 +101,7 @@ public class MpgObjectImpl implements MpgObject {
 
 	public void setObjectType(String objectType) {
 		this.objectType = objectType == null ? "undefined type" : objectType;
+		valuesChanged();
 	}
 
 	@Override
@@ -89,6 +111,7 @@ public class MpgObjectImpl implements MpgObject {
 
 	public void setObjectName(String objectName) {
 		this.objectName = objectName == null ? "undefined name" : objectName;
+		valuesChanged();
 	}
 
 	@Override
@@ -107,6 +130,7 @@ public class MpgObjectImpl implements MpgObject {
 
 	public void setGeometry(MpgGeometry geom) {
 		this.geometry = geom;
+		notifyChanged();
 	}
 
 	@Override
@@ -118,12 +142,14 @@ public class MpgObjectImpl implements MpgObject {
 	public void setNLsfbCode(String code) {
 		if (NlsfbCode.isNlsfbCode(code)) {
 			this.nlsfb = new NlsfbCode(code);
+			valuesChanged();
 		}
 	}
 	
 	@Override
 	public void setNLsfbCode(NlsfbCode code) {
 		this.nlsfb = code;
+		valuesChanged();
 	}
 
 	@Override
@@ -159,13 +185,91 @@ public class MpgObjectImpl implements MpgObject {
 	@JsonIgnore
 	@Override
 	public Map<String, Object> getProperties() {
-		return this.properties;
+		MpgPropertyBag bag = this.resolvedProperties();
+		return bag == null ? Collections.emptyMap() : bag.asMap();
+	}
+
+	/**
+	 * @return the properties that are resolved so far. Does not resolve deferred
+	 *         properties.
+	 */
+	Map<String, Object> getResolvedProperties() {
+		MpgPropertyBag bag = this.properties;
+		return bag == null ? Collections.emptyMap() : bag.asMap();
 	}
 
 	public void addProperty(String name, Object value) {
+		if (this.resolvedProperties() == null) {
+			this.usePropertySchema(new MpgPropertySchema());
+			this.ownsPropertySchema = true;
+		}
 		this.properties.put(name, value);
 	}
 
+	/**
+	 * @return the numeric value of a property or null if it is absent or not numeric
+	 */
+	Double getNumericProperty(String name) {
+		MpgPropertyBag bag = this.resolvedProperties();
+		return bag == null ? null : bag.getNumber(name);
+	}
+
+	/**
+	 * let the properties of this object be resolved on first access. Properties
+	 * that are added explicitly overwrite deferred properties with the same name.
+	 */
+	void setDeferredProperties(MpgPropertySource source) {
+		this.deferredProperties = source;
+	}
+
+	boolean hasDeferredProperties() {
+		return this.deferredProperties != null;
+	}
+
+	private MpgPropertyBag resolvedProperties() {
+		if (this.deferredProperties != null) {
+			synchronized (this) {
+				MpgPropertySource source = this.deferredProperties;
+				if (source != null) {
+					if (this.properties == null) {
+						this.usePropertySchema(new MpgPropertySchema());
+						this.ownsPropertySchema = true;
+					}
+					source.addPropertiesTo(this.properties::put);
+					this.deferredProperties = null;
+				}
+			}
+		}
+		return this.properties;
+	}
+
+	Long getProductFingerprint() {
+		return this.productFingerprint;
+	}
+
+	void setProductFingerprint(Long fingerprint) {
+		this.productFingerprint = fingerprint;
+	}
+
+	/**
+	 * let the properties of this object use the names and labels of a collection
+	 * or store wide schema. Applies as long as no schema has been assigned or the
+	 * schema was created for this object only, in which case the properties are
+	 * copied to the new schema.
+	 */
+	void usePropertySchema(MpgPropertySchema schema) {
+		if (this.properties == null) {
+			this.properties = new MpgPropertyBag(schema);
+		} else if (this.ownsPropertySchema && this.properties.getSchema() != schema) {
+			MpgPropertyBag bag = new MpgPropertyBag(schema);
+			this.properties.asMap().forEach(bag::put);
+			this.properties = bag;
+		} else {
+			return;
+		}
+		this.ownsPropertySchema = false;
+	}
+
 	@Override
 	public List<MpgInfoTag> getAllTags() {
 		return this.tags;
@@ -184,6 +288,7 @@ public class MpgObjectImpl implements MpgObject {
 	@Override
 	public void addMaterialSource(String materialName, String materialGuid, String source) {
 		this.getListedMaterials().add(new MaterialSource(materialGuid, materialName, source));
+		valuesChanged();
 	}
 
 	@Override
@@ -207,9 +312,36 @@ public class MpgObjectImpl implements MpgObject {
 	public void addMaterialSource(MaterialSource source) {
 		if (!source.getName().isEmpty()) {
 			this.listedMaterials.add(source);
+			valuesChanged();
 		}
 	}
 
+	@JsonIgnore
+	@Override
+	public MpgObjectStore getStore() {
+		return this.store;
+	}
+
+	@Override
+	public void setStore(MpgObjectStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * let the store know that data it may have derived from this object is no
+	 * longer valid.
+	 */
+	private void notifyChanged() {
+		if (this.store != null) {
+			this.store.objectChanged(this);
+		}
+	}
+
+	private void valuesChanged() {
+		this.valueFingerprintIsValid = false;
+		notifyChanged();
+	}
+
 	@Override
 	public String getValueHash() {
 		String nlsfbToText = this.nlsfb == null ? "" : this.getNLsfbCode().print();
@@ -219,10 +351,57 @@ public class MpgObjectImpl implements MpgObject {
 		+ nlsfbToText;
 	}
 
+	/**
+	 * MpgFingerprint of the same values as the getValueHash method. The hash
+	 * is cached until any of these values change. Equal fingerprints do not
+	 * guarantee equal values, use hasEqualValues to confirm.
+	 */
+	@JsonIgnore
+	@Override
+	public long getValueFingerprint() {
+		if (!valueFingerprintIsValid) {
+			MpgFingerprint fingerprint = new MpgFingerprint();
+			fingerprint.add(this.getObjectName()).add(this.getObjectType());
+			for (MaterialSource mat : this.getListedMaterials()) {
+				fingerprint.add(mat.getName());
+			}
+			fingerprint.add(this.nlsfb == null ? null : this.nlsfb.print());
+			valueFingerprint = fingerprint.getValue();
+			valueFingerprintIsValid = true;
+		}
+		return valueFingerprint;
+	}
+
+	@Override
+	public boolean hasEqualValues(MpgObject mpgObject) {
+		if (mpgObject == null) {
+			return false;
+		}
+		if (this.getValueFingerprint() != mpgObject.getValueFingerprint()
+				|| !this.getObjectName().equals(mpgObject.getObjectName())
+				|| !this.getObjectType().equals(mpgObject.getObjectType())) {
+			return false;
+		}
+
+		List<MaterialSource> otherMaterials = mpgObject.getListedMaterials();
+		if (this.getListedMaterials().size() != otherMaterials.size()) {
+			return false;
+		}
+		for (int i = 0; i < otherMaterials.size(); i++) {
+			if (!Objects.equals(this.getListedMaterials().get(i).getName(), otherMaterials.get(i).getName())) {
+				return false;
+			}
+		}
+
+		String nlsfbToText = this.nlsfb == null ? "" : this.getNLsfbCode().print();
+		String otherNlsfbToText = mpgObject.getNLsfbCode() == null ? "" : mpgObject.getNLsfbCode().print();
+		return nlsfbToText.equals(otherNlsfbToText);
+	}
+
 	@Override
 	public boolean copyMappingFromObject(MpgObject mpgObject) {
-		if (this.getValueHash().equals(mpgObject.getValueHash())) {
-			// the value hash should already confirm that the two lists are equals so no need to do another check
+		if (this.hasEqualValues(mpgObject)) {
+			// equal values confirm that the two material lists are equal so no need to do another check
 			for (int i = 0; i < this.getListedMaterials().size(); i++) {
 				this.getListedMaterials().set(i, mpgObject.getListedMaterials().get(i).copy());
 			}	
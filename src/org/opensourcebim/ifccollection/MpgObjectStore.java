@@ -33,6 +33,7 @@ public interface MpgObjectStore {
 	void addObject(MpgObject mpgObject);
 	List<MpgObject> getObjectsByGuids(HashSet<String> guids);
 	Optional<MpgObject> getObjectByGuid(String guid);
+	Optional<MpgObject> getObjectByOid(long oid);
 	Stream<MpgObject> getChildren(String parentGuid);
 	
 	LengthUnit getLengthUnit();
@@ -43,12 +44,21 @@ public interface MpgObjectStore {
 	MpgElement getElementByName(String name);
 	List<MpgElement> getElementsByProductType(String productType);
 	MpgElement getElementByObjectGuid(String guid);
+	void updateElementIndex(MpgElement element, MpgObject previousObject);
+	void objectChanged(MpgObject mpgObject);
 	Map<String, List<MpgElement>> getElementGroups();
+	List<List<MpgElement>> getElementGroupList();
 	
 	void addProductCard(NmdProductCard card);
 	NmdProductCard getProductCard(Integer id);
+	/**
+	 * @param ids ids of product cards, unknown and null ids are skipped
+	 * @return the distinct product cards of the ids, in the order of the ids
+	 */
 	List<NmdProductCard> getProductCards(Collection<Integer> ids);
 	Map<Integer, NmdProductCard> getProductCards();
+	@JsonIgnore
+	long getProductCardVersion();
 	
 	void addSpace(MpgSpace space);
 	double getTotalVolumeOfMaterial(String name);
@@ -56,7 +66,10 @@ public interface MpgObjectStore {
 	
 	boolean isIfcDataComplete();
 	
+	MpgFrozenStore freeze();
+	
 	void toggleMappingDependencies(String globalId, boolean flag);
+	void mappingChanged(MpgElement element);
 	
 	@JsonIgnore
 	GuidCollection getGuidsWithoutMaterial();
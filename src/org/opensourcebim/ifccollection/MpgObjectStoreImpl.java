@@ -2,22 +2,25 @@ package org.opensourcebim.ifccollection;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.bimserver.utils.AreaUnit;
 import org.bimserver.utils.LengthUnit;
 import org.bimserver.utils.VolumeUnit;
 import org.eclipse.emf.common.util.BasicEList;
 import org.opensourcebim.ifcanalysis.GuidCollection;
-import org.opensourcebim.mapping.NmdMappingType;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -37,7 +40,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	@JsonIgnore
 	private List<MpgObject> mpgObjects;
 	
-	private HashMap<Integer, NmdProductCard> productCards;
+	private NmdProductCardRegistry productCards;
 
 	private List<MpgSpace> spaces;
 	
@@ -45,30 +48,92 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	private Long revisionId;
 
 	/**
-	 * list to store the guids with any MpgObjects that the object linked to that
-	 * guid decomposes
+	 * adjacency index of the decomposition hierarchy: the MpgObjects that
+	 * decompose the object with the key guid and the reverse child to parent guid
+	 * lookup
 	 */
 	@JsonIgnore
-	private List<ImmutablePair<String, MpgObject>> decomposedRelations;
+	private HashMap<String, List<MpgObject>> childrenByParentGuid;
+	@JsonIgnore
+	private HashMap<String, String> parentGuidByChildGuid;
+
+	/**
+	 * lookup indices that are kept in sync with the object and element
+	 * collections. Element names are stored in lower case as the name lookup is
+	 * case insensitive.
+	 */
+	@JsonIgnore
+	private HashMap<String, MpgObject> objectsByGuid;
+	@JsonIgnore
+	private HashMap<Long, MpgObject> objectsByOid;
+	@JsonIgnore
+	private HashMap<String, MpgElement> elementsByName;
+	@JsonIgnore
+	private HashMap<String, MpgElement> elementsByObjectGuid;
+	@JsonIgnore
+	private IdentityHashMap<MpgObject, MpgElement> elementsByObject;
+
+	@JsonIgnore
+	private MpgElementGroups elementGroups;
+
+	@JsonIgnore
+	private MpgQualityAnalysis qualityAnalysis;
+
+	@JsonIgnore
+	private MpgMappingPropagation mappingPropagation;
+
+	@JsonIgnore
+	private MpgMaterialIndex materialIndex;
+
+	@JsonIgnore
+	private MpgCollectionStatistics statistics;
+
+	// property names and labels of the objects that are added without a
+	// collection wide schema
+	@JsonIgnore
+	private MpgPropertySchema propertySchema;
 
 	private VolumeUnit volumeUnit;
 	private AreaUnit areaUnit;
 	private LengthUnit lengthUnit;
 
 	public MpgObjectStoreImpl() {
-		productCards = new HashMap<Integer, NmdProductCard>();
+		productCards = new NmdProductCardRegistry();
+		objectsByGuid = new HashMap<String, MpgObject>();
+		objectsByOid = new HashMap<Long, MpgObject>();
+		elementsByName = new HashMap<String, MpgElement>();
+		elementsByObjectGuid = new HashMap<String, MpgElement>();
+		elementsByObject = new IdentityHashMap<MpgObject, MpgElement>();
+		elementGroups = new MpgElementGroups();
 		setElements(new HashSet<>());
 		setObjects(new BasicEList<MpgObject>());
 		setSpaces(new BasicEList<MpgSpace>());
 		setUnits(VolumeUnit.CUBIC_METER, AreaUnit.SQUARED_METER, LengthUnit.METER);
-		decomposedRelations = new ArrayList<ImmutablePair<String,MpgObject>>();
+		childrenByParentGuid = new HashMap<String, List<MpgObject>>();
+		parentGuidByChildGuid = new HashMap<String, String>();
+		qualityAnalysis = new MpgQualityAnalysis(this);
+		mappingPropagation = new MpgMappingPropagation(this);
+		materialIndex = new MpgMaterialIndex();
+		statistics = new MpgCollectionStatistics();
+		propertySchema = new MpgPropertySchema();
 	}
 
 	public void reset() {
-		decomposedRelations.clear();
+		childrenByParentGuid.clear();
+		parentGuidByChildGuid.clear();
 		mpgObjects.clear();
 		mpgElements.clear();
 		spaces.clear();
+		objectsByGuid.clear();
+		objectsByOid.clear();
+		elementsByName.clear();
+		elementsByObjectGuid.clear();
+		elementsByObject.clear();
+		elementGroups.clear();
+		qualityAnalysis.clear();
+		mappingPropagation.invalidate();
+		materialIndex.clear();
+		propertySchema = new MpgPropertySchema();
 	}
 
 	@Override
@@ -123,6 +188,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 		if (name != null && !name.isEmpty()) {
 			el = new MpgElement(name, this);
 			mpgElements.add(el);
+			elementsByName.putIfAbsent(name.toLowerCase(Locale.ROOT), el);
 		}
 		return el;
 	}
@@ -144,9 +210,70 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 		}
 	}
 
+	/**
+	 * Keep the object guid index of the elements up to date. Called by the
+	 * element whenever its MpgObject is (re)set.
+	 */
+	@Override
+	public void updateElementIndex(MpgElement element, MpgObject previousObject) {
+		if (previousObject != null) {
+			if (previousObject.getGlobalId() != null) {
+				elementsByObjectGuid.remove(previousObject.getGlobalId(), element);
+			}
+			elementsByObject.remove(previousObject, element);
+			if (!elementsByObject.containsKey(previousObject)) {
+				materialIndex.elementLinked(previousObject, false);
+			}
+		}
+		MpgObject obj = element.getMpgObject();
+		if (obj != null) {
+			if (obj.getGlobalId() != null) {
+				elementsByObjectGuid.put(obj.getGlobalId(), element);
+			}
+			elementsByObject.put(obj, element);
+			materialIndex.elementLinked(obj, true);
+			if (obj.getStore() == null) {
+				obj.setStore(this);
+			}
+		}
+		elementGroups.update(element);
+		mappingPropagation.invalidate();
+	}
+
+	/**
+	 * Notification of an MpgObject that its layers, materials or geometry have
+	 * changed. Any cached data derived from the object is invalidated.
+	 */
+	@Override
+	public void objectChanged(MpgObject mpgObject) {
+		qualityAnalysis.invalidate(mpgObject);
+		materialIndex.objectChanged(mpgObject);
+		MpgElement el = elementsByObject.get(mpgObject);
+		if (el != null) {
+			el.invalidateProductCards();
+			elementGroups.update(el);
+		}
+	}
+
+	/**
+	 * Add an object to the store. Objects should always be added through this
+	 * method (and not through the getObjects list) to keep the lookups valid.
+	 */
 	@Override
 	public void addObject(MpgObject mpgObject) {
 		this.getObjects().add(mpgObject);
+		if (mpgObject.getGlobalId() != null) {
+			objectsByGuid.putIfAbsent(mpgObject.getGlobalId(), mpgObject);
+		}
+		objectsByOid.putIfAbsent(mpgObject.getObjectId(), mpgObject);
+		addDecomposedRelation(mpgObject);
+		mpgObject.setStore(this);
+		if (mpgObject instanceof MpgObjectImpl) {
+			((MpgObjectImpl) mpgObject).usePropertySchema(propertySchema);
+		}
+		materialIndex.objectAdded(mpgObject);
+		qualityAnalysis.invalidate(mpgObject);
+		mappingPropagation.invalidate();
 	}
 	
 	@Override
@@ -169,55 +296,73 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	
 	@Override
 	public void addProductCard(NmdProductCard card) {
-		this.productCards.putIfAbsent(card.getProductId(), card);
+		this.productCards.putIfAbsent(card);
 	}
 	
 	public void removeProductCard(Integer id) {
-		this.productCards.remove(id);
+		if (id != null) {
+			this.productCards.remove(id);
+		}
 	}
 	
 	@Override
 	public NmdProductCard getProductCard(Integer id) {
-		return this.productCards.getOrDefault(id, null);
+		return id == null ? null : this.productCards.get(id);
 	}
 	
 	@Override
 	public Map<Integer, NmdProductCard> getProductCards() {
-		return this.productCards;
+		return this.productCards.toMap();
 	}
 	
 	@Override
 	public List<NmdProductCard> getProductCards(Collection<Integer> ids) {
-		return this.productCards.entrySet().stream()
-				.filter(es -> ids.contains(es.getKey()))
-				.map(es -> es.getValue())
-				.collect(Collectors.toList());
+		List<NmdProductCard> res = new ArrayList<NmdProductCard>(ids.size());
+		Set<NmdProductCard> added = Collections.newSetFromMap(new IdentityHashMap<NmdProductCard, Boolean>());
+		for (Integer id : ids) {
+			NmdProductCard card = id == null ? null : this.productCards.get(id);
+			if (card != null && added.add(card)) {
+				res.add(card);
+			}
+		}
+		return res;
 	}
 
-	private List<MpgObject> getObjectsByProductType(String productType) {
-		return mpgObjects.stream().filter(g -> g.getObjectType().equals(productType)).collect(Collectors.toList());
+	@Override
+	@JsonIgnore
+	public long getProductCardVersion() {
+		return this.productCards.getVersion();
 	}
 
-	private List<MpgSpace> getObjectsByMaterialName(String materialName) {
-		return mpgObjects.stream().flatMap(g -> g.getLayers().stream()).filter(o -> o.getMaterialName() != null)
-				.filter(o -> o.getMaterialName().equals(materialName)).collect(Collectors.toList());
+	private List<MpgObject> getObjectsByProductType(String productType) {
+		return materialIndex.getObjectsByProductType(productType);
 	}
 
 	@Override
 	public Optional<MpgObject> getObjectByGuid(String guidId) {
-		return mpgObjects.stream().filter(o -> guidId.equals(o.getGlobalId())).findFirst();
+		return Optional.ofNullable(objectsByGuid.get(guidId));
+	}
+
+	@Override
+	public Optional<MpgObject> getObjectByOid(long oid) {
+		return Optional.ofNullable(objectsByOid.get(oid));
 	}
 
 	@Override
 	public List<MpgObject> getObjectsByGuids(HashSet<String> guidIds) {
-		return mpgObjects.stream().filter(o -> guidIds.contains(o.getGlobalId())).collect(Collectors.toList());
+		List<MpgObject> res = new ArrayList<MpgObject>();
+		for (String guid : guidIds) {
+			MpgObject obj = objectsByGuid.get(guid);
+			if (obj != null) {
+				res.add(obj);
+			}
+		}
+		return res;
 	}
 
 	@Override
 	public MpgElement getElementByName(String name) {
-		Optional<MpgElement> element = getElements().stream().filter(e -> e.getIfcName().equalsIgnoreCase(name))
-				.findFirst();
-		return element.isPresent() ? element.get() : null;
+		return name == null ? null : elementsByName.get(name.toLowerCase(Locale.ROOT));
 	}
 
 	@Override
@@ -231,30 +376,38 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 
 	@Override
 	public MpgElement getElementByObjectGuid(String guid) {
-		Optional<MpgElement> el = this.getElements().stream().filter(e -> e.getMpgObject().getGlobalId().equals(guid))
-				.findFirst();
-		if (el.isPresent()) {
-			return el.get();
-		} else {
-			return null;
-		}
+		return guid == null ? null : elementsByObjectGuid.get(guid);
 	}
 	
 	/**
-	 * Group the elements by an equalByValues
+	 * Get the elements grouped by the value hash of their MpgObjects.
 	 */
 	@JsonIgnore
 	@Override
 	public Map<String, List<MpgElement>> getElementGroups() {
-		return this.mpgElements.stream().collect(Collectors.groupingBy(el -> {
-			return el.getValueHash();
-		}));
+		Map<String, List<MpgElement>> res = new LinkedHashMap<String, List<MpgElement>>();
+		for (List<MpgElement> group : elementGroups.getGroups()) {
+			res.merge(group.get(0).getValueHash(), group, (g1, g2) -> {
+				g1.addAll(g2);
+				return g1;
+			});
+		}
+		return res;
+	}
+
+	/**
+	 * Get the elements grouped by the values of their MpgObjects. The groups are
+	 * maintained while elements and objects change, this method only copies them.
+	 */
+	@JsonIgnore
+	@Override
+	public List<List<MpgElement>> getElementGroupList() {
+		return elementGroups.getGroups();
 	}
 
 	@Override
 	public double getTotalVolumeOfMaterial(String name) {
-		return getObjectsByMaterialName(name).stream()
-				.collect(Collectors.summingDouble(o -> o == null ? 0.0 : o.getVolume()));
+		return materialIndex.getTotalVolumeOfMaterial(name);
 	}
 
 	@Override
@@ -275,6 +428,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	 *                                  and decomposing objects.
 	 */
 	public void reloadParentChildRelationShips(Map<String, String> isDecomposedByrelationMap) {
+		long start = statistics.start();
 
 		this.getObjects().forEach(o -> {
 			if (isDecomposedByrelationMap.containsKey(o.getGlobalId())) {
@@ -282,19 +436,52 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 			}
 		});
 
-		// create a list with parent ids linked to child objects
-		this.decomposedRelations = this.getObjects().stream().filter(o -> !StringUtils.isBlank(o.getParentId()))
-				.map(o -> new ImmutablePair<String, MpgObject>(o.getParentId(), o)).collect(Collectors.toList());
+		// rebuild the parent to children index
+		childrenByParentGuid.clear();
+		parentGuidByChildGuid.clear();
+		this.getObjects().forEach(o -> addDecomposedRelation(o));
+		qualityAnalysis.clear();
+		mappingPropagation.invalidate();
+		statistics.stop(MpgCollectionStatistics.Phase.RELATIONS, start);
+	}
+
+	/**
+	 * @return the timers and counters of the collection that filled this store
+	 */
+	@JsonIgnore
+	public MpgCollectionStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * share the statistics of a collector with this store
+	 */
+	void setStatistics(MpgCollectionStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	private void addDecomposedRelation(MpgObject obj) {
+		String parentId = obj.getParentId();
+		if (!StringUtils.isBlank(parentId)) {
+			childrenByParentGuid.computeIfAbsent(parentId, k -> new ArrayList<MpgObject>()).add(obj);
+			if (obj.getGlobalId() != null) {
+				parentGuidByChildGuid.put(obj.getGlobalId(), parentId);
+			}
+		}
 	}
 
 	@Override
 	public Stream<MpgObject> getChildren(String parentGuid) {
-		if (this.decomposedRelations != null) {
-			return this.decomposedRelations.parallelStream().filter(p -> p.getLeft() == parentGuid)
-					.map(p -> p.getRight());
-		} else {
-			return (new ArrayList<MpgObject>()).stream();
-		}
+		return getChildList(parentGuid).stream();
+	}
+
+	String getParentGuid(String childGuid) {
+		return childGuid == null ? null : parentGuidByChildGuid.get(childGuid);
+	}
+
+	List<MpgObject> getChildList(String parentGuid) {
+		List<MpgObject> children = parentGuid == null ? null : childrenByParentGuid.get(parentGuid);
+		return children == null ? Collections.emptyList() : children;
 	}
 
 	/**
@@ -309,8 +496,17 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 
 	@Override
 	public boolean isIfcDataComplete() {
-		return getGuidsWithoutMaterial().getSize() == 0 && getGuidsWithoutVolume().getSize() == 0
-				&& getGuidsWithRedundantMaterials().getSize() == 0 && getGuidsWithUndefinedLayerMats().getSize() == 0;
+		return qualityAnalysis.isComplete();
+	}
+
+	/**
+	 * Create an immutable snapshot of the store to use in the read only phases
+	 * after the mapping. Changes to the store after this call are not reflected
+	 * in the snapshot.
+	 */
+	@Override
+	public MpgFrozenStore freeze() {
+		return new MpgFrozenStore(this, qualityAnalysis);
 	}
 
 	/**
@@ -323,109 +519,29 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	 */
 	@Override
 	public void toggleMappingDependencies(String globalId, boolean flag) {
-		List<MpgElement> children = this.allChildElementsByGuid(globalId);
-		List<MpgElement> parents = this.allParentElementsByGuid(globalId);
-
-		if (flag) {
-			// override all the children mappings
-			children.forEach(el -> {
-				el.setMappingMethod(NmdMappingType.IndirectThroughParent);
-				el.removeProductCards();
-			});
-			
-			parents.forEach(el -> {
-				if (el.getMappingMethod() == NmdMappingType.None && allChildrenAreMapped(el)) {
-					el.setMappingMethod(NmdMappingType.IndirectThroughChildren);
-				}
-			});
-		} else {
-			// revert all hierarchical child mappings 
-			// (as there can only be a single parent with a direct mapping)
-			children.forEach(el -> {
-				if (el.getMappingMethod() == NmdMappingType.IndirectThroughParent) {
-					el.setMappingMethod(NmdMappingType.None);
-				}
-			});
-			// any parents that had a indirect through children mapping will be reverted
-			parents.forEach(el -> {
-				if (el.getMappingMethod() == NmdMappingType.IndirectThroughChildren) {
-					el.setMappingMethod(NmdMappingType.None);
-				}
-			});
-		}
-
+		mappingPropagation.toggleMappingDependencies(globalId, flag);
 	}
 
 	/**
-	 * Recursively check whether all children are mapped.
-	 * @param el MpgElement to check hierarchy of
-	 * @return a flag to indicate that all chidren have a mapping
+	 * Notification of an element that its mapping method has changed. Updates the
+	 * mapped children counts used to determine indirect mappings of its parents.
 	 */
-	private boolean allChildrenAreMapped(MpgElement el) {
-		List<MpgElement> childrenOfElement = decomposedRelations.stream()
-				.filter(kvp -> kvp.getKey().equals(el.getMpgObject().getGlobalId()))
-				.map(v -> v.getValue().getGlobalId())
-				.map(guid -> this.getElementByObjectGuid(guid)).collect(Collectors.toList());
-		
-		if (childrenOfElement.size() > 0) {
-			return childrenOfElement.stream().allMatch(ce -> ce.hasMapping() || allChildrenAreMapped(ce));
-		} else {
-			return false;
-		}
-	}
-	
-	/**
-	 * get a collection of MpgElements that are higher up in the hierarchy than the
-	 * input element guid
-	 * 
-	 * @param globalId guid to start search
-	 * @return collection of elements that have the input guid as a (recursive)
-	 *         child
-	 */
-	private List<MpgElement> allParentElementsByGuid(String globalId) {
-		List<MpgElement> elements = new ArrayList<MpgElement>();
-		Optional<String> parentId = this.decomposedRelations.stream()
-				.filter(v -> v.getValue().getGlobalId().equals(globalId)).map(v -> v.getKey()).findFirst();
-		if (parentId.isPresent() && !parentId.get().isEmpty()) {
-			MpgElement parent = this.getElementByObjectGuid(parentId.get());
-			elements.add(parent);
-			elements.addAll(allParentElementsByGuid(parent.getMpgObject().getGlobalId()));
-		}
-		return elements;
-	}
-
-	/**
-	 * Get a collection of elements that are down in the hierarchy than the input guid
-	 * 
-	 * @param globalId guid to start from
-	 * @return a list of elements that are a (recursive) child of the input guid
-	 */
-	private List<MpgElement> allChildElementsByGuid(String globalId) {
-		List<MpgElement> elements = this.mpgElements.stream()
-				.filter(el -> el.getMpgObject().getParentId().equals(globalId)).collect(Collectors.toList());
-		List<MpgElement> childEl = new ArrayList<MpgElement>();
-		elements.forEach(el -> {
-			childEl.addAll(allChildElementsByGuid(el.getMpgObject().getGlobalId()));
-		});
-		elements.addAll(childEl);
-		return elements;
+	@Override
+	public void mappingChanged(MpgElement element) {
+		mappingPropagation.mappingChanged(element);
 	}
 
 	@Override
 	@JsonIgnore
 	public Stream<String> getAllMaterialNames() {
-		return this.getElements().stream().flatMap(e -> e.getMpgObject().getListedMaterials().stream())
-				.map(s -> s.getName()).filter(n -> {
-					return (n != null && !n.isEmpty());
-				}).distinct();
+		return materialIndex.getElementMaterialNames();
 	}
 
 	@Override
 	@JsonIgnore
 	public GuidCollection getGuidsWithoutMaterial() {
 		GuidCollection coll = new GuidCollection(this, "Object GUIDs that have missing materials");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasUndefinedMaterials(o, false)).map(o -> o.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.UNDEFINED_MATERIALS));
 		return coll;
 	}
 
@@ -435,8 +551,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 
 		GuidCollection coll = new GuidCollection(this,
 				"Object GUIDs without material and any of the decomposed objects without material");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasUndefinedMaterials(o, true)).map(o -> o.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.UNDEFINED_MATERIALS_IN_TREE));
 		return coll;
 	}
 
@@ -444,8 +559,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	@JsonIgnore
 	public GuidCollection getGuidsWithoutVolume() {
 		GuidCollection coll = new GuidCollection(this, "Object GUIDs that have missing volumes");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasUndefinedVolume(o, false)).map(o -> o.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.UNDEFINED_VOLUME));
 		return coll;
 	}
 
@@ -454,8 +568,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	public GuidCollection getGuidsWithoutVolumeAndWithoutFullDecomposedVolumes() {
 		GuidCollection coll = new GuidCollection(this,
 				"Object GUIDs without volume and any of the decomposed objects without volume");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasUndefinedVolume(o, true)).map(o -> o.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.UNDEFINED_VOLUME_IN_TREE));
 		return coll;
 	}
 
@@ -463,8 +576,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	@JsonIgnore
 	public GuidCollection getGuidsWithRedundantMaterials() {
 		GuidCollection coll = new GuidCollection(this, "Object GUIDs that cannot be linked to materials 1-on-1");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasRedundantMaterials(o, false)).map(o -> o.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.REDUNDANT_MATERIALS));
 		return coll;
 	}
 
@@ -472,8 +584,7 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	@JsonIgnore
 	public GuidCollection getGuidsWithUndefinedLayerMats() {
 		GuidCollection coll = new GuidCollection(this, "Object GUIDsthat have undefined layers");
-		coll.setCollection(mpgObjects.stream().filter(o -> hasUndefinedLayers(o, false)).map(g -> g.getGlobalId())
-				.collect(Collectors.toList()));
+		coll.setCollection(qualityAnalysis.getGuidsWithIssue(MpgQualityAnalysis.UNDEFINED_LAYERS));
 		return coll;
 	}
 	
@@ -487,53 +598,30 @@ public class MpgObjectStoreImpl implements MpgObjectStore {
 	}
 	
 	/**
-	 * Recursive check method to validate whether a material or any of its children
-	 * have undefined materials
+	 * Check whether an object or, when included, any of its decomposed objects
+	 * has undefined materials. The results are memoized by the quality analysis.
 	 */
 	@Override
 	public boolean hasUndefinedMaterials(MpgObject obj, boolean includeChildren) {
-		long numLayers = obj.getLayers().size();
-		boolean objIsUndefined = (numLayers + obj.getMaterialNamesBySource(null).size()) == 0;
-
-		// anyMatch returns false on an empty list, so if children should be included,
-		// but no children are present it will still return false
-		boolean hasChildren = getChildren(obj.getGlobalId()).count() > 0;
-		boolean childrenAreUndefined = includeChildren
-				&& getChildren(obj.getGlobalId()).anyMatch(o -> hasUndefinedMaterials(o, includeChildren));
-
-		return objIsUndefined && !hasChildren ? objIsUndefined : childrenAreUndefined;
+		return qualityAnalysis.hasIssue(obj, includeChildren ? MpgQualityAnalysis.UNDEFINED_MATERIALS_IN_TREE
+				: MpgQualityAnalysis.UNDEFINED_MATERIALS);
 	}
 
 	@Override
 	public boolean hasUndefinedVolume(MpgObject obj, boolean includeChildren) {
-		boolean ownCheck = obj.getGeometry() == null || obj.getGeometry().getVolume() == 0;
-		boolean hasChildren = getChildren(obj.getGlobalId()).count() > 0;
-		boolean childCheck = includeChildren
-				&& getChildren(obj.getGlobalId()).anyMatch(o -> hasUndefinedVolume(o, includeChildren));
-
-		return ownCheck && !hasChildren ? true : childCheck;
+		return qualityAnalysis.hasIssue(obj, includeChildren ? MpgQualityAnalysis.UNDEFINED_VOLUME_IN_TREE
+				: MpgQualityAnalysis.UNDEFINED_VOLUME);
 	}
 
 	@Override
 	public boolean hasRedundantMaterials(MpgObject obj, boolean includeChildren) {
-		long numLayers = obj.getLayers().size();
-		boolean ownCheck = (numLayers == 0) && (obj.getMaterialNamesBySource(null).size() > 1)
-				|| obj.hasDuplicateMaterialNames();
-		boolean childCheck = includeChildren
-				&& getChildren(obj.getGlobalId()).anyMatch(o -> hasRedundantMaterials(o, includeChildren));
-		return ownCheck || childCheck;
+		return qualityAnalysis.hasIssue(obj, includeChildren ? MpgQualityAnalysis.REDUNDANT_MATERIALS_IN_TREE
+				: MpgQualityAnalysis.REDUNDANT_MATERIALS);
 	}
 
 	@Override
 	public boolean hasUndefinedLayers(MpgObject obj, boolean includeChildren) {
-		long numLayers = obj.getLayers().size();
-		long unresolvedLayers = obj.getLayers().stream()
-				.filter(l -> l.getMaterialName() == "" || l.getMaterialName() == null).collect(Collectors.toList())
-				.size();
-
-		boolean ownCheck = (numLayers > 0) && (unresolvedLayers > 0);
-		boolean childCheck = includeChildren
-				&& getChildren(obj.getGlobalId()).anyMatch(o -> hasUndefinedLayers(o, includeChildren));
-		return ownCheck || childCheck;
-	}	
+		return qualityAnalysis.hasIssue(obj, includeChildren ? MpgQualityAnalysis.UNDEFINED_LAYERS_IN_TREE
+				: MpgQualityAnalysis.UNDEFINED_LAYERS);
+	}
 }
@@ -0,0 +1,55 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collection sink that fills an object store. Creates an element for every
+ * collected object and sets the parent child relations once the collection is
+ * finished.
+ */
+class MpgObjectStoreSink implements MpgCollectionSink {
+
+	private final MpgObjectStoreImpl store;
+	private final Map<String, String> childToParentMap;
+
+	MpgObjectStoreSink(MpgObjectStoreImpl store) {
+		this.store = store;
+		this.childToParentMap = new HashMap<String, String>();
+	}
+
+	@Override
+	public void collectionStarted(Long projectId, Long revisionId) {
+		store.reset();
+		childToParentMap.clear();
+		if (projectId != null) {
+			store.setProjectId(projectId);
+		}
+		if (revisionId != null) {
+			store.setRevisionId(revisionId);
+		}
+	}
+
+	@Override
+	public void spaceCollected(MpgSpace space) {
+		store.getSpaces().add(space);
+	}
+
+	@Override
+	public void objectCollected(String elementId, MpgObject object) {
+		MpgElement newMpgElement = store.addElement(elementId);
+		store.addObject(object);
+		newMpgElement.setMpgObject(object);
+	}
+
+	@Override
+	public void parentRelationCollected(String childGuid, String parentGuid) {
+		childToParentMap.put(childGuid, parentGuid);
+	}
+
+	@Override
+	public void collectionFinished() {
+		// set all parent child relations for elements
+		store.reloadParentChildRelationShips(childToParentMap);
+	}
+}
@@ -0,0 +1,173 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+
+/**
+ * Filter on the product types that are collected from an IfcModel. Excluded
+ * types are given by their ifc type name and exclude all their subtypes as
+ * well. The included classes of a model schema are determined once and stored
+ * as a set of EClass ids, so only the included product types are retrieved
+ * from a model.
+ */
+public class MpgProductFilter {
+
+	/**
+	 * products that are not relevant for the mpg calculations.
+	 */
+	public static final List<String> DEFAULT_EXCLUDED_TYPES = Collections.unmodifiableList(Arrays.asList(
+			"IfcSite", "IfcBuilding", "IfcBuildingStorey", "IfcFurnishingElement", "IfcOpeningElement",
+			"IfcVirtualElement", "IfcSpace", "IfcAnnotation", "IfcGrid"));
+
+	private final List<String> excludedTypes;
+	private final List<Class<?>> excludedInterfaces;
+
+	// included classes of the last evaluated schema
+	private EPackage schema = null;
+	private BitSet includedClassIds = null;
+	private List<EClass> includedClasses = null;
+
+	public MpgProductFilter() {
+		this(DEFAULT_EXCLUDED_TYPES);
+	}
+
+	/**
+	 * @param excludedTypes ifc type names of the products to exclude, for instance
+	 *                      IfcSpace. Unknown types are ignored.
+	 */
+	public MpgProductFilter(Collection<String> excludedTypes) {
+		this.excludedTypes = Collections.unmodifiableList(new ArrayList<String>(new LinkedHashSet<String>(excludedTypes)));
+		this.excludedInterfaces = new ArrayList<Class<?>>();
+		for (String type : this.excludedTypes) {
+			try {
+				excludedInterfaces.add(Class.forName(IfcProduct.class.getPackage().getName() + "." + type));
+			} catch (ClassNotFoundException e) {
+				// not a type of this schema.
+			}
+		}
+	}
+
+	/**
+	 * Create a filter from a comma separated list of ifc type names
+	 * 
+	 * @param excludedTypes comma separated type names. The default types are
+	 *                      excluded when the value is empty.
+	 * @return a product filter
+	 */
+	public static MpgProductFilter fromSetting(String excludedTypes) {
+		if (StringUtils.isBlank(excludedTypes)) {
+			return new MpgProductFilter();
+		}
+		return new MpgProductFilter(Arrays.stream(excludedTypes.split(","))
+				.map(String::trim)
+				.filter(StringUtils::isNotEmpty)
+				.collect(Collectors.toList()));
+	}
+
+	public List<String> getExcludedTypes() {
+		return excludedTypes;
+	}
+
+	/**
+	 * @param model the model to retrieve the products from
+	 * @return all products of the model that are not excluded
+	 */
+	public List<IfcProduct> getProducts(IfcModelInterface model) {
+		PackageMetaData metaData = model.getPackageMetaData();
+		if (metaData == null) {
+			// no schema information available. Filter the products one by one.
+			return model.getAllWithSubTypes(IfcProduct.class).stream()
+					.filter(this::includes)
+					.collect(Collectors.toList());
+		}
+
+		List<IfcProduct> products = new ArrayList<IfcProduct>();
+		for (EClass eClass : getIncludedClasses(metaData)) {
+			for (IdEObject obj : model.getAll(eClass)) {
+				products.add((IfcProduct) obj);
+			}
+		}
+		return products;
+	}
+
+	/**
+	 * @param product any ifc product
+	 * @return true if the product should be collected
+	 */
+	public boolean includes(IfcProduct product) {
+		EClass eClass = product.eClass();
+		BitSet classIds = getIncludedClassIds(eClass);
+		if (classIds != null) {
+			return classIds.get(eClass.getClassifierID());
+		}
+		for (Class<?> excluded : excludedInterfaces) {
+			if (excluded.isInstance(product)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private synchronized BitSet getIncludedClassIds(EClass eClass) {
+		if (eClass == null || eClass.getEPackage() != schema) {
+			return null;
+		}
+		return includedClassIds;
+	}
+
+	/**
+	 * determine the included concrete product classes of a schema. The result is
+	 * kept for following models of the same schema.
+	 */
+	private synchronized List<EClass> getIncludedClasses(PackageMetaData metaData) {
+		if (metaData.getEPackage() == schema && includedClasses != null) {
+			return includedClasses;
+		}
+
+		EClass productClass = metaData.getEClass("IfcProduct");
+		List<EClass> excludedClasses = new ArrayList<EClass>();
+		for (String type : excludedTypes) {
+			EClass excluded = metaData.getEClass(type);
+			if (excluded != null) {
+				excludedClasses.add(excluded);
+			}
+		}
+
+		Set<EClass> productClasses = new LinkedHashSet<EClass>();
+		productClasses.add(productClass);
+		productClasses.addAll(metaData.getAllSubClasses(productClass));
+
+		BitSet classIds = new BitSet();
+		List<EClass> classes = new ArrayList<EClass>();
+		for (EClass eClass : productClasses) {
+			if (excludedClasses.stream().noneMatch(excluded -> excluded.isSuperTypeOf(eClass))) {
+				classIds.set(eClass.getClassifierID());
+				if (!eClass.isAbstract() && !eClass.isInterface()) {
+					classes.add(eClass);
+				}
+			}
+		}
+		classes.sort(Comparator.comparingInt(EClass::getClassifierID));
+
+		schema = metaData.getEPackage();
+		includedClassIds = classIds;
+		includedClasses = Collections.unmodifiableList(classes);
+		return includedClasses;
+	}
+}
@@ -0,0 +1,196 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact storage of the properties of a single object. Property names are
+ * stored as ids of a shared schema, numeric values in a primitive array and
+ * labels as dictionary ids. Values of any other type are kept as they are.
+ */
+class MpgPropertyBag {
+
+	private static final int NUMERIC = -1;
+	private static final int OTHER = -2;
+
+	private final MpgPropertySchema schema;
+	private int[] keys;
+	private double[] numbers;
+	// label id of the value or one of the NUMERIC and OTHER markers
+	private int[] labels;
+	private Object[] others;
+	private int size;
+
+	MpgPropertyBag(MpgPropertySchema schema) {
+		this.schema = schema;
+		this.size = 0;
+	}
+
+	MpgPropertySchema getSchema() {
+		return schema;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * add or replace a property value. Null values are ignored.
+	 */
+	void put(String key, Object value) {
+		if (key == null || value == null) {
+			return;
+		}
+		int keyId = schema.keyId(key);
+		int index = indexOf(keyId);
+		if (index < 0) {
+			index = append(keyId);
+		}
+
+		if (value instanceof Double) {
+			labels[index] = NUMERIC;
+			numbers[index] = (Double) value;
+		} else if (value instanceof String) {
+			labels[index] = schema.labelId((String) value);
+		} else {
+			if (others == null) {
+				others = new Object[keys.length];
+			}
+			labels[index] = OTHER;
+			others[index] = value;
+		}
+		if (labels[index] != OTHER && others != null) {
+			others[index] = null;
+		}
+	}
+
+	boolean containsKey(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return the boxed value of a property or null when it is not present
+	 */
+	Object get(String key) {
+		int index = indexOf(key);
+		return index < 0 ? null : valueAt(index);
+	}
+
+	/**
+	 * @return the numeric value of a property or null when the property is not
+	 *         present or not numeric
+	 */
+	Double getNumber(String key) {
+		int index = indexOf(key);
+		return index < 0 || labels[index] != NUMERIC ? null : numbers[index];
+	}
+
+	/**
+	 * @return a read only map view on the properties. Values are boxed on access.
+	 */
+	Map<String, Object> asMap() {
+		return new MapView();
+	}
+
+	private int indexOf(String key) {
+		if (key == null || size == 0) {
+			return -1;
+		}
+		int keyId = schema.findKeyId(key);
+		return keyId < 0 ? -1 : indexOf(keyId);
+	}
+
+	private int indexOf(int keyId) {
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == keyId) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int append(int keyId) {
+		if (keys == null) {
+			keys = new int[4];
+			numbers = new double[4];
+			labels = new int[4];
+		} else if (size == keys.length) {
+			int capacity = size * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+			labels = Arrays.copyOf(labels, capacity);
+			if (others != null) {
+				others = Arrays.copyOf(others, capacity);
+			}
+		}
+		keys[size] = keyId;
+		return size++;
+	}
+
+	private Object valueAt(int index) {
+		switch (labels[index]) {
+		case NUMERIC:
+			return numbers[index];
+		case OTHER:
+			return others[index];
+		default:
+			return schema.label(labels[index]);
+		}
+	}
+
+	private class MapView extends AbstractMap<String, Object> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && MpgPropertyBag.this.containsKey((String) key);
+		}
+
+		@Override
+		public Object get(Object key) {
+			return key instanceof String ? MpgPropertyBag.this.get((String) key) : null;
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<Entry<String, Object>>() {
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					return new Iterator<Entry<String, Object>>() {
+						private int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							return index < size;
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(
+									schema.key(keys[index]), valueAt(index));
+							index++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the property names and labels that are used by the property
+ * bags of a collection or a store. Names and labels are encoded as int ids
+ * that are stable for the lifetime of the schema. Ids can be assigned
+ * concurrently.
+ */
+class MpgPropertySchema {
+
+	private final Dictionary keys;
+	private final Dictionary labels;
+
+	MpgPropertySchema() {
+		keys = new Dictionary();
+		labels = new Dictionary();
+	}
+
+	/**
+	 * @return the id of the property name, assigning a new id when it is unknown
+	 */
+	int keyId(String key) {
+		return keys.idOf(key);
+	}
+
+	/**
+	 * @return the id of the property name or -1 when it is not part of the schema
+	 */
+	int findKeyId(String key) {
+		return keys.find(key);
+	}
+
+	String key(int id) {
+		return keys.get(id);
+	}
+
+	int labelId(String label) {
+		return labels.idOf(label);
+	}
+
+	String label(int id) {
+		return labels.get(id);
+	}
+
+	private static class Dictionary {
+		private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+		private volatile String[] values = new String[16];
+		private int size = 0;
+
+		int idOf(String value) {
+			Integer id = ids.get(value);
+			if (id == null) {
+				synchronized (this) {
+					id = ids.get(value);
+					if (id == null) {
+						if (size == values.length) {
+							values = Arrays.copyOf(values, size * 2);
+						}
+						values[size] = value;
+						id = size++;
+						ids.put(value, id);
+					}
+				}
+			}
+			return id;
+		}
+
+		int find(String value) {
+			Integer id = ids.get(value);
+			return id == null ? -1 : id;
+		}
+
+		String get(int id) {
+			return values[id];
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Deferred source of the properties of an object. Resolves the properties when
+ * they are first accessed instead of during the collection.
+ */
+@FunctionalInterface
+interface MpgPropertySource {
+
+	/**
+	 * @param target consumer of the names and values of the resolved properties
+	 */
+	void addPropertiesTo(BiConsumer<String, Object> target);
+}
@@ -0,0 +1,175 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Memoized model quality checks for the objects in an object store. All
+ * checks of an object and its decomposed objects are determined in a single
+ * post-order walk of the decomposition tree and stored as a set of flags per
+ * object. Changing an object only invalidates the flags of that object and its
+ * ancestors.
+ */
+class MpgQualityAnalysis {
+
+	// checks on the object itself (the includeChildren = false variant)
+	static final int UNDEFINED_MATERIALS = 1;
+	static final int UNDEFINED_VOLUME = 1 << 1;
+	static final int REDUNDANT_MATERIALS = 1 << 2;
+	static final int UNDEFINED_LAYERS = 1 << 3;
+
+	// checks including the decomposed objects (the includeChildren = true variant)
+	static final int UNDEFINED_MATERIALS_IN_TREE = 1 << 4;
+	static final int UNDEFINED_VOLUME_IN_TREE = 1 << 5;
+	static final int REDUNDANT_MATERIALS_IN_TREE = 1 << 6;
+	static final int UNDEFINED_LAYERS_IN_TREE = 1 << 7;
+
+	static final int ANY_OWN_ISSUE = UNDEFINED_MATERIALS | UNDEFINED_VOLUME | REDUNDANT_MATERIALS
+			| UNDEFINED_LAYERS;
+
+	private final MpgObjectStoreImpl store;
+	private final IdentityHashMap<MpgObject, Integer> flags;
+	private final Map<Integer, List<String>> guidsByFlag;
+
+	MpgQualityAnalysis(MpgObjectStoreImpl store) {
+		this.store = store;
+		this.flags = new IdentityHashMap<MpgObject, Integer>();
+		this.guidsByFlag = new HashMap<Integer, List<String>>();
+	}
+
+	/**
+	 * @return a flag to indicate whether the object has the checked issue
+	 */
+	boolean hasIssue(MpgObject obj, int flag) {
+		return (getFlags(obj) & flag) != 0;
+	}
+
+	/**
+	 * @return true when none of the store objects has an issue on its own
+	 */
+	boolean isComplete() {
+		for (MpgObject obj : store.getObjects()) {
+			if ((getFlags(obj) & ANY_OWN_ISSUE) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the guids of all store objects that have the checked issue. The result
+	 * is cached until any of the objects changes.
+	 */
+	List<String> getGuidsWithIssue(int flag) {
+		List<String> guids = guidsByFlag.get(flag);
+		if (guids == null) {
+			guids = new ArrayList<String>();
+			for (MpgObject obj : store.getObjects()) {
+				if ((getFlags(obj) & flag) != 0) {
+					guids.add(obj.getGlobalId());
+				}
+			}
+			guidsByFlag.put(flag, guids);
+		}
+		return new ArrayList<String>(guids);
+	}
+
+	/**
+	 * Remove the cached results of an object and all the objects it (recursively)
+	 * decomposes.
+	 */
+	void invalidate(MpgObject obj) {
+		guidsByFlag.clear();
+		flags.remove(obj);
+
+		HashSet<String> visited = new HashSet<String>();
+		String parentId = obj.getParentId();
+		while (!StringUtils.isBlank(parentId) && visited.add(parentId)) {
+			Optional<MpgObject> parent = store.getObjectByGuid(parentId);
+			if (!parent.isPresent()) {
+				break;
+			}
+			flags.remove(parent.get());
+			parentId = parent.get().getParentId();
+		}
+	}
+
+	void clear() {
+		guidsByFlag.clear();
+		flags.clear();
+	}
+
+	/**
+	 * get the flags of an object. Any object in the subtree that has not been
+	 * evaluated yet is evaluated before its parent (post-order)
+	 */
+	int getFlags(MpgObject obj) {
+		Integer res = flags.get(obj);
+		if (res != null) {
+			return res;
+		}
+
+		// mark the object to avoid endless recursion on cyclic decompositions.
+		flags.put(obj, 0);
+
+		List<MpgObject> children = store.getChildList(obj.getGlobalId());
+		int childFlags = 0;
+		for (MpgObject child : children) {
+			childFlags |= getFlags(child);
+		}
+
+		int own = determineOwnFlags(obj);
+		int value = own;
+		if (children.isEmpty()) {
+			// undefined materials and volumes are only an issue when no decomposed
+			// objects are present that could define them.
+			value |= (own & UNDEFINED_MATERIALS) != 0 ? UNDEFINED_MATERIALS_IN_TREE : 0;
+			value |= (own & UNDEFINED_VOLUME) != 0 ? UNDEFINED_VOLUME_IN_TREE : 0;
+		} else {
+			value &= ~(UNDEFINED_MATERIALS | UNDEFINED_VOLUME);
+			value |= childFlags & (UNDEFINED_MATERIALS_IN_TREE | UNDEFINED_VOLUME_IN_TREE);
+		}
+		value |= (own & REDUNDANT_MATERIALS) != 0 || (childFlags & REDUNDANT_MATERIALS_IN_TREE) != 0
+				? REDUNDANT_MATERIALS_IN_TREE
+				: 0;
+		value |= (own & UNDEFINED_LAYERS) != 0 || (childFlags & UNDEFINED_LAYERS_IN_TREE) != 0
+				? UNDEFINED_LAYERS_IN_TREE
+				: 0;
+
+		flags.put(obj, value);
+		return value;
+	}
+
+	private static int determineOwnFlags(MpgObject obj) {
+		int res = 0;
+		int numLayers = obj.getLayers().size();
+		int numMaterials = obj.getListedMaterials().size();
+
+		if (numLayers + numMaterials == 0) {
+			res |= UNDEFINED_MATERIALS;
+		}
+
+		if (obj.getGeometry() == null || obj.getGeometry().getVolume() == 0) {
+			res |= UNDEFINED_VOLUME;
+		}
+
+		if ((numLayers == 0 && numMaterials > 1) || obj.hasDuplicateMaterialNames()) {
+			res |= REDUNDANT_MATERIALS;
+		}
+
+		for (MpgLayer layer : obj.getLayers()) {
+			if (layer.getMaterialName() == null || layer.getMaterialName().isEmpty()) {
+				res |= UNDEFINED_LAYERS;
+				break;
+			}
+		}
+		return res;
+	}
+}
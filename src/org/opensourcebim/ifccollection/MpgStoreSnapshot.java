@@ -0,0 +1,345 @@
+package org.opensourcebim.ifccollection;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.bimserver.utils.AreaUnit;
+import org.bimserver.utils.LengthUnit;
+import org.bimserver.utils.VolumeUnit;
+import org.opensourcebim.mapping.NmdMappingType;
+
+import nl.tno.bim.nmd.domain.NlsfbCode;
+
+/**
+ * Binary snapshot of an object store. Contains the spaces, objects (with their
+ * layers, materials, resolved properties, tags and decomposition) and elements with
+ * their mapping methods. Strings are written once in a string table after the
+ * body and referenced by index, so the body is streamed to the output. The
+ * snapshot ends with the length of the body to locate the table. NMD product cards are not part of the snapshot: the
+ * material map ids are kept, but the cards have to be resolved again.
+ */
+class MpgStoreSnapshot {
+
+	private static final int MAGIC = 0x4d504753;
+	private static final int VERSION = 3;
+	private static final int NULL = -1;
+
+	private static final byte PROPERTY_NUMBER = 0;
+	private static final byte PROPERTY_TEXT = 1;
+
+	private MpgStoreSnapshot() {
+	}
+
+	/**
+	 * write a snapshot of a store
+	 * 
+	 * @param store    the store to write
+	 * @param checksum checksum of the model content the store was collected from
+	 * @param output   stream to write the snapshot to
+	 * @throws IOException when writing to the stream fails
+	 */
+	static void write(MpgObjectStore store, long checksum, OutputStream output) throws IOException {
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		List<String> stringTable = new ArrayList<String>();
+		DataOutputStream out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(checksum);
+
+		// counts the bytes of the body only
+		DataOutputStream body = new DataOutputStream(out);
+		StringWriter str = value -> {
+			if (value == null) {
+				body.writeInt(NULL);
+			} else {
+				Integer id = strings.get(value);
+				if (id == null) {
+					id = stringTable.size();
+					strings.put(value, id);
+					stringTable.add(value);
+				}
+				body.writeInt(id);
+			}
+		};
+
+		writeNullableLong(body, store.getProjectId());
+		writeNullableLong(body, store.getRevisionId());
+		str.write(store.getVolumeUnit().name());
+		str.write(store.getAreaUnit().name());
+		str.write(store.getLengthUnit().name());
+
+		body.writeInt(store.getSpaces().size());
+		for (MpgSpace space : store.getSpaces()) {
+			str.write(space.getId());
+			body.writeDouble(space.getVolume());
+			body.writeDouble(space.getArea());
+		}
+
+		List<MpgObject> objects = store.getObjects();
+		Map<MpgObject, Integer> objectIndex = new IdentityHashMap<MpgObject, Integer>();
+		body.writeInt(objects.size());
+		for (MpgObject obj : objects) {
+			objectIndex.putIfAbsent(obj, objectIndex.size());
+			body.writeLong(obj.getObjectId());
+			str.write(obj.getGlobalId());
+			str.write(obj.getObjectName());
+			str.write(obj.getObjectType());
+			str.write(obj.getParentId());
+			Long fingerprint = obj instanceof MpgObjectImpl ? ((MpgObjectImpl) obj).getProductFingerprint() : null;
+			writeNullableLong(body, fingerprint);
+
+			MpgGeometry geom = obj.getGeometry();
+			body.writeBoolean(geom != null);
+			if (geom != null) {
+				body.writeDouble(geom.getVolume());
+				body.writeDouble(geom.getFloorArea());
+				body.writeByte(geom.getIsComplete() == null ? NULL : geom.getIsComplete() ? 1 : 0);
+				Double[] dims = geom.getDimensions();
+				body.writeBoolean(dims != null && dims.length == 3);
+				if (dims != null && dims.length == 3) {
+					for (Double dim : dims) {
+						body.writeDouble(dim == null ? Double.NaN : dim);
+					}
+				}
+			}
+
+			str.write(obj.getNLsfbCode() == null ? null : obj.getNLsfbCode().print());
+			body.writeInt(obj.getNLsfbAlternatives().size());
+			for (NlsfbCode code : obj.getNLsfbAlternatives()) {
+				str.write(code.print());
+			}
+
+			body.writeInt(obj.getLayers().size());
+			for (MpgLayer layer : obj.getLayers()) {
+				body.writeDouble(layer.getVolume());
+				body.writeDouble(layer.getArea());
+				str.write(layer.getMaterialName());
+				str.write(layer.getId());
+			}
+
+			body.writeInt(obj.getListedMaterials().size());
+			for (MaterialSource mat : obj.getListedMaterials()) {
+				str.write(mat.getOid());
+				str.write(mat.getName());
+				str.write(mat.getSource());
+				body.writeInt(mat.getMapId() == null ? NULL : mat.getMapId());
+				str.write(mat.getMapName());
+			}
+
+			body.writeInt(obj.getAllTags().size());
+			for (MpgInfoTag tag : obj.getAllTags()) {
+				str.write(tag.getType().name());
+				str.write(tag.getMessage());
+			}
+
+			// deferred properties are not forced, objects of incremental collections have
+			// their properties resolved already
+			Map<String, Object> properties = obj instanceof MpgObjectImpl
+					? ((MpgObjectImpl) obj).getResolvedProperties()
+					: obj.getProperties();
+			body.writeInt(properties.size());
+			for (Entry<String, Object> prop : properties.entrySet()) {
+				str.write(prop.getKey());
+				if (prop.getValue() instanceof Double) {
+					body.writeByte(PROPERTY_NUMBER);
+					body.writeDouble((Double) prop.getValue());
+				} else {
+					body.writeByte(PROPERTY_TEXT);
+					str.write(String.valueOf(prop.getValue()));
+				}
+			}
+		}
+
+		body.writeInt(store.getElements().size());
+		for (MpgElement el : store.getElements()) {
+			str.write(el.getIfcName());
+			Integer index = el.getMpgObject() == null ? null : objectIndex.get(el.getMpgObject());
+			body.writeInt(index == null ? NULL : index);
+			str.write(el.getMappingMethod().name());
+		}
+		body.flush();
+
+		out.writeInt(stringTable.size());
+		for (String value : stringTable) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.writeInt(body.size());
+		out.flush();
+	}
+
+	/**
+	 * read a snapshot into a new store
+	 * 
+	 * @param buffer   buffer that is positioned at the start of a snapshot and
+	 *                 ends with it
+	 * @param checksum expected checksum of the model content or null to accept
+	 *                 any snapshot
+	 * @return a store with the contents of the snapshot or null when the checksum
+	 *         differs
+	 * @throws IOException when the buffer does not contain a valid snapshot
+	 */
+	static MpgObjectStoreImpl read(ByteBuffer buffer, Long checksum) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("not a snapshot of a supported version");
+			}
+			long storedChecksum = buffer.getLong();
+			if (checksum != null && storedChecksum != checksum) {
+				return null;
+			}
+			int bodyLength = buffer.getInt(buffer.limit() - Integer.BYTES);
+			ByteBuffer table = buffer.duplicate();
+			table.position(buffer.position() + bodyLength);
+			String[] strings = new String[table.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[table.getInt()];
+				table.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return readBody(buffer, strings);
+		} catch (RuntimeException e) {
+			// buffer underflows, invalid string references or enum values
+			throw new IOException("corrupt object store snapshot", e);
+		}
+	}
+
+	private static MpgObjectStoreImpl readBody(ByteBuffer buffer, String[] strings) {
+		MpgObjectStoreImpl store = new MpgObjectStoreImpl();
+		store.setProjectId(readNullableLong(buffer));
+		store.setRevisionId(readNullableLong(buffer));
+		store.setUnits(VolumeUnit.valueOf(readString(buffer, strings)), AreaUnit.valueOf(readString(buffer, strings)),
+				LengthUnit.valueOf(readString(buffer, strings)));
+
+		int spaceCount = buffer.getInt();
+		for (int i = 0; i < spaceCount; i++) {
+			String id = readString(buffer, strings);
+			double volume = buffer.getDouble();
+			store.getSpaces().add(new MpgSpaceImpl(id, volume, buffer.getDouble()));
+		}
+
+		MpgPropertySchema schema = new MpgPropertySchema();
+		MpgObjectImpl[] objects = new MpgObjectImpl[buffer.getInt()];
+		for (int i = 0; i < objects.length; i++) {
+			long objectId = buffer.getLong();
+			String globalId = readString(buffer, strings);
+			String name = readString(buffer, strings);
+			MpgObjectImpl obj = new MpgObjectImpl(objectId, globalId, name, null, null);
+			obj.setObjectType(readString(buffer, strings));
+			obj.setParentId(readString(buffer, strings));
+			obj.setProductFingerprint(readNullableLong(buffer));
+			obj.usePropertySchema(schema);
+
+			if (buffer.get() != 0) {
+				MpgGeometry geom = new MpgGeometry();
+				geom.setVolume(buffer.getDouble());
+				geom.setFloorArea(buffer.getDouble());
+				byte isComplete = buffer.get();
+				geom.setIsComplete(isComplete == NULL ? null : isComplete == 1);
+				if (buffer.get() != 0) {
+					geom.setDimensions(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+				}
+				obj.setGeometry(geom);
+			}
+
+			String nlsfb = readString(buffer, strings);
+			if (nlsfb != null) {
+				obj.setNLsfbCode(new NlsfbCode(nlsfb));
+			}
+			int alternativeCount = buffer.getInt();
+			for (int j = 0; j < alternativeCount; j++) {
+				obj.getNLsfbAlternatives().add(new NlsfbCode(readString(buffer, strings)));
+			}
+
+			int layerCount = buffer.getInt();
+			for (int j = 0; j < layerCount; j++) {
+				double volume = buffer.getDouble();
+				double area = buffer.getDouble();
+				String materialName = readString(buffer, strings);
+				obj.addLayer(new MpgLayerImpl(volume, area, materialName, readString(buffer, strings)));
+			}
+
+			int materialCount = buffer.getInt();
+			for (int j = 0; j < materialCount; j++) {
+				String oid = readString(buffer, strings);
+				String materialName = readString(buffer, strings);
+				obj.addMaterialSource(materialName, oid, readString(buffer, strings));
+				int mapId = buffer.getInt();
+				obj.getListedMaterials().get(j).setMapping(mapId == NULL ? null : mapId, readString(buffer, strings));
+			}
+
+			int tagCount = buffer.getInt();
+			for (int j = 0; j < tagCount; j++) {
+				MpgInfoTagType type = MpgInfoTagType.valueOf(readString(buffer, strings));
+				obj.addTag(type, readString(buffer, strings));
+			}
+
+			int propertyCount = buffer.getInt();
+			for (int j = 0; j < propertyCount; j++) {
+				String key = readString(buffer, strings);
+				if (buffer.get() == PROPERTY_NUMBER) {
+					obj.addProperty(key, buffer.getDouble());
+				} else {
+					obj.addProperty(key, readString(buffer, strings));
+				}
+			}
+
+			objects[i] = obj;
+			store.addObject(obj);
+		}
+
+		// apply the direct mappings after all elements are present, mappings through
+		// the decomposition follow from these.
+		int elementCount = buffer.getInt();
+		List<MpgElement> mappedElements = new ArrayList<MpgElement>();
+		List<NmdMappingType> mappings = new ArrayList<NmdMappingType>();
+		for (int i = 0; i < elementCount; i++) {
+			MpgElement el = store.addElement(readString(buffer, strings));
+			int index = buffer.getInt();
+			NmdMappingType mapping = NmdMappingType.valueOf(readString(buffer, strings));
+			if (el == null || index == NULL) {
+				continue;
+			}
+			el.setMpgObject(objects[index]);
+			if (mapping != NmdMappingType.IndirectThroughChildren && mapping != NmdMappingType.IndirectThroughParent) {
+				mappedElements.add(el);
+				mappings.add(mapping);
+			}
+		}
+		for (int i = 0; i < mappedElements.size(); i++) {
+			mappedElements.get(i).setMappingMethod(mappings.get(i));
+		}
+		return store;
+	}
+
+	private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value);
+		}
+	}
+
+	private static Long readNullableLong(ByteBuffer buffer) {
+		return buffer.get() != 0 ? buffer.getLong() : null;
+	}
+
+	private static String readString(ByteBuffer buffer, String[] strings) {
+		int id = buffer.getInt();
+		return id == NULL ? null : strings[id];
+	}
+
+	@FunctionalInterface
+	private interface StringWriter {
+		void write(String value) throws IOException;
+	}
+}
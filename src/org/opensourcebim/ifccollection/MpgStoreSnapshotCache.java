@@ -0,0 +1,225 @@
+package org.opensourcebim.ifccollection;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cache of object store snapshots in a local directory keyed by project,
+ * revision and a variant of the collection settings. A snapshot is only used
+ * for a model with the checksum it was saved with. Snapshots are read back
+ * through a memory mapped file. When the snapshots exceed the size budget the
+ * least recently used snapshots are removed.
+ */
+public class MpgStoreSnapshotCache {
+
+	private static final String EXTENSION = ".mpgsnapshot";
+
+	private final Path directory;
+	private final long maxBytes;
+
+	/**
+	 * @param directory directory to store the snapshots in. Is created when it
+	 *                  does not exist.
+	 * @param maxBytes  size budget of all snapshots in the directory
+	 */
+	public MpgStoreSnapshotCache(Path directory, long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("size budget of the snapshot cache should not be negative");
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * read the snapshot of a revision. Snapshots that can not be read are removed
+	 * from the cache.
+	 * 
+	 * @param checksum checksum of the content of the model
+	 * @return a new store with the contents of the snapshot or null when there is
+	 *         no valid snapshot of the revision with the same checksum
+	 */
+	public synchronized MpgObjectStore load(long projectId, long revisionId, String variant, long checksum) {
+		return load(fileOf(projectId, revisionId, variant), checksum);
+	}
+
+	private MpgObjectStore load(Path file, Long checksum) {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		MpgObjectStoreImpl store;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			store = MpgStoreSnapshot.read(buffer, checksum);
+		} catch (IOException e) {
+			deleteQuietly(file);
+			return null;
+		}
+		if (store == null) {
+			// a snapshot of other model content, it is replaced when this model is saved
+			return null;
+		}
+
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// the snapshot is still valid, it will only be evicted earlier
+		}
+		return store;
+	}
+
+	/**
+	 * read the snapshot of the latest revision of a project before the given
+	 * revision, regardless of its checksum.
+	 * 
+	 * @return a new store with the contents of the snapshot or null when there is
+	 *         no valid snapshot of an earlier revision
+	 */
+	public synchronized MpgObjectStore loadPrevious(long projectId, long revisionId, String variant) {
+		Long previousRevisionId = null;
+		for (Path file : listSnapshots()) {
+			String[] key = file.getFileName().toString().replace(EXTENSION, "").split("-", 3);
+			try {
+				long rid = Long.parseLong(key[1]);
+				if (key.length == 3 && Long.parseLong(key[0]) == projectId && key[2].equals(variant)
+						&& rid < revisionId && (previousRevisionId == null || rid > previousRevisionId)) {
+					previousRevisionId = rid;
+				}
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				// not a snapshot of this cache
+			}
+		}
+		return previousRevisionId == null ? null : load(fileOf(projectId, previousRevisionId, variant), null);
+	}
+
+	/**
+	 * write the snapshot of a store and evict the least recently used snapshots
+	 * when the cache exceeds its size budget.
+	 * 
+	 * @param checksum checksum of the content of the model the store was collected
+	 *                 from
+	 * @throws IOException when the snapshot can not be written
+	 */
+	public synchronized void save(MpgObjectStore store, String variant, long checksum) throws IOException {
+		if (store.getProjectId() == null || store.getRevisionId() == null || store.getProjectId() <= 0
+				|| store.getRevisionId() <= 0) {
+			throw new IllegalArgumentException("only stores of a stored project revision can be cached");
+		}
+		Files.createDirectories(directory);
+
+		// write to a temporary file first so readers never see a partial snapshot
+		Path file = fileOf(store.getProjectId(), store.getRevisionId(), variant);
+		Path temp = Files.createTempFile(directory, "snapshot", ".tmp");
+		try {
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+				MpgStoreSnapshot.write(store, checksum, out);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			deleteQuietly(temp);
+		}
+		evict();
+	}
+
+	/**
+	 * the size of all snapshots in the cache
+	 */
+	public synchronized long size() {
+		long total = 0;
+		for (Path file : listSnapshots()) {
+			total += sizeOf(file);
+		}
+		return total;
+	}
+
+	private void evict() {
+		List<Path> files = listSnapshots();
+		long total = 0;
+		for (Path file : files) {
+			total += sizeOf(file);
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+
+		files.sort(Comparator.comparingLong(MpgStoreSnapshotCache::lastModifiedOf));
+		for (Path file : files) {
+			if (total <= maxBytes) {
+				break;
+			}
+			long size = sizeOf(file);
+			if (deleteQuietly(file)) {
+				total -= size;
+			}
+		}
+	}
+
+	private Path fileOf(long projectId, long revisionId, String variant) {
+		if (variant == null || !variant.matches("[A-Za-z0-9_]*")) {
+			throw new IllegalArgumentException("variant of a snapshot should be alphanumeric");
+		}
+		return directory.resolve(projectId + "-" + revisionId + "-" + variant + EXTENSION);
+	}
+
+	private List<Path> listSnapshots() {
+		List<Path> files = new ArrayList<Path>();
+		if (!Files.isDirectory(directory)) {
+			return files;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+			stream.forEach(files::add);
+		} catch (IOException e) {
+			// an unreadable directory is treated as an empty cache
+		}
+		return files;
+	}
+
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static long lastModifiedOf(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static boolean deleteQuietly(Path file) {
+		try {
+			return Files.deleteIfExists(file);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the strings that are repeated over the products of a
+ * single collection (types, names, property keys and material ids). Strings
+ * returned by the table for equal values are the same instance. The table can
+ * be shared by the threads of a parallel collection.
+ */
+class MpgSymbolTable {
+
+	private final ConcurrentHashMap<String, String> symbols;
+	private final ConcurrentHashMap<String, String> lowerCaseSymbols;
+	private final ConcurrentHashMap<Class<?>, String> typeNames;
+	private final ConcurrentHashMap<Long, String> oidSymbols;
+
+	MpgSymbolTable() {
+		symbols = new ConcurrentHashMap<String, String>();
+		lowerCaseSymbols = new ConcurrentHashMap<String, String>();
+		typeNames = new ConcurrentHashMap<Class<?>, String>();
+		oidSymbols = new ConcurrentHashMap<Long, String>();
+	}
+
+	/**
+	 * @return the canonical instance of the value
+	 */
+	String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String symbol = symbols.putIfAbsent(value, value);
+		return symbol == null ? value : symbol;
+	}
+
+	/**
+	 * @return the canonical instance of the lower case value
+	 */
+	String lowerCase(String value) {
+		if (value == null) {
+			return null;
+		}
+		String symbol = lowerCaseSymbols.get(value);
+		if (symbol == null) {
+			symbol = intern(value.toLowerCase());
+			lowerCaseSymbols.put(value, symbol);
+		}
+		return symbol;
+	}
+
+	/**
+	 * @return the simple name of the class without any Impl suffix
+	 */
+	String typeName(Class<?> type) {
+		return typeNames.computeIfAbsent(type, t -> {
+			String symbol = t.getSimpleName();
+			if (symbol.endsWith("Impl")) {
+				symbol = symbol.substring(0, symbol.length() - "Impl".length());
+			}
+			return intern(symbol);
+		});
+	}
+
+	/**
+	 * @return the canonical string representation of an object id
+	 */
+	String oid(long oid) {
+		return oidSymbols.computeIfAbsent(oid, k -> intern(Long.toString(k)));
+	}
+
+	void clear() {
+		symbols.clear();
+		lowerCaseSymbols.clear();
+		typeNames.clear();
+		oidSymbols.clear();
+	}
+}
@@ -0,0 +1,148 @@
+package org.opensourcebim.ifccollection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.tno.bim.nmd.domain.NmdProductCard;
+
+/**
+ * Product cards of an object store keyed by their (primitive) product id. Uses
+ * open addressing with linear probing so lookups do not box the ids.
+ */
+class NmdProductCardRegistry {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] ids;
+	private NmdProductCard[] cards;
+	private int size;
+	private long version;
+
+	NmdProductCardRegistry() {
+		clear();
+	}
+
+	/**
+	 * @return the card with the given product id or null if it is not registered
+	 */
+	NmdProductCard get(int id) {
+		int slot = slotOf(id);
+		return slot < 0 ? null : cards[slot];
+	}
+
+	boolean contains(int id) {
+		return slotOf(id) >= 0;
+	}
+
+	/**
+	 * add a card when no card with the same product id is present yet.
+	 */
+	void putIfAbsent(NmdProductCard card) {
+		Integer productId = card.getProductId();
+		if (productId == null || contains(productId)) {
+			return;
+		}
+		int id = productId;
+		if ((size + 1) * 2 > cards.length) {
+			resize(cards.length * 2);
+		}
+		int slot = indexOf(id, cards.length);
+		while (cards[slot] != null) {
+			slot = (slot + 1) & (cards.length - 1);
+		}
+		ids[slot] = id;
+		cards[slot] = card;
+		size++;
+		version++;
+	}
+
+	void remove(int id) {
+		int slot = slotOf(id);
+		if (slot < 0) {
+			return;
+		}
+		int mask = cards.length - 1;
+		cards[slot] = null;
+		size--;
+		version++;
+
+		// shift back any entries of the probe sequence that follow the removed slot
+		int next = (slot + 1) & mask;
+		while (cards[next] != null) {
+			int home = indexOf(ids[next], cards.length);
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				ids[slot] = ids[next];
+				cards[slot] = cards[next];
+				cards[next] = null;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	void clear() {
+		ids = new int[INITIAL_CAPACITY];
+		cards = new NmdProductCard[INITIAL_CAPACITY];
+		size = 0;
+		version++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return a counter that changes whenever a card is added or removed. Can be
+	 *         used to validate card lookups that were cached elsewhere.
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return a copy of the registered cards as a map
+	 */
+	Map<Integer, NmdProductCard> toMap() {
+		Map<Integer, NmdProductCard> res = new LinkedHashMap<Integer, NmdProductCard>();
+		for (int i = 0; i < cards.length; i++) {
+			if (cards[i] != null) {
+				res.put(ids[i], cards[i]);
+			}
+		}
+		return res;
+	}
+
+	private int slotOf(int id) {
+		int mask = cards.length - 1;
+		int slot = indexOf(id, cards.length);
+		while (cards[slot] != null) {
+			if (ids[slot] == id) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void resize(int capacity) {
+		int[] oldIds = ids;
+		NmdProductCard[] oldCards = cards;
+		ids = new int[capacity];
+		cards = new NmdProductCard[capacity];
+		for (int i = 0; i < oldCards.length; i++) {
+			if (oldCards[i] != null) {
+				int slot = indexOf(oldIds[i], capacity);
+				while (cards[slot] != null) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				ids[slot] = oldIds[i];
+				cards[slot] = oldCards[i];
+			}
+		}
+	}
+
+	private static int indexOf(int id, int capacity) {
+		int h = id * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (capacity - 1);
+	}
+}
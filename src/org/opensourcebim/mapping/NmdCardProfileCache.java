@@ -0,0 +1,116 @@
+package org.opensourcebim.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import nl.tno.bim.nmd.domain.NmdProductCard;
+import nl.tno.bim.nmd.domain.NmdProfileSet;
+
+/**
+ * Keywords of the description and profile set names of product cards, keyed by
+ * product id and shared by all resolvers. A cached profile is only used while
+ * the description and profile set names of the card and the tokenizer settings
+ * are the same as when it was determined, so cards of reloaded NMD data or cards
+ * that received additional profile sets are profiled again. The least recently
+ * used profiles are dropped when the cache is full.
+ */
+class NmdCardProfileCache {
+
+	private static final int DEFAULT_MAX_CACHED_ENTRIES = 50000;
+
+	static final NmdCardProfileCache SHARED = new NmdCardProfileCache();
+
+	private final Map<Integer, CardProfile> profiles;
+
+	NmdCardProfileCache() {
+		this(DEFAULT_MAX_CACHED_ENTRIES);
+	}
+
+	/**
+	 * @param maxCachedEntries number of product cards of which the profile is
+	 *                         cached
+	 */
+	NmdCardProfileCache(int maxCachedEntries) {
+		profiles = Collections.synchronizedMap(new NmdLeastRecentlyUsedCache<Integer, CardProfile>(maxCachedEntries));
+	}
+
+	/**
+	 * @param card product card with its profile sets loaded
+	 * @return the distinct keywords of the card
+	 */
+	CardProfile getProfile(NmdProductCard card) {
+		Integer productId = card.getProductId();
+		CardProfile profile = productId == null ? null : profiles.get(productId);
+		if (profile == null || !profile.isProfileOf(card)) {
+			profile = new CardProfile(card);
+			if (productId != null) {
+				profiles.put(productId, profile);
+			}
+		}
+		return profile;
+	}
+
+	void clear() {
+		profiles.clear();
+	}
+
+	int size() {
+		return profiles.size();
+	}
+
+	static class CardProfile {
+
+		// the source values the keywords are determined from
+		private final String description;
+		private final String[] profileSetNames;
+		private final NmdTextTokenizer.Settings settings;
+
+		private final List<String> keyWords;
+
+		private CardProfile(NmdProductCard card) {
+			settings = NmdTextTokenizer.SHARED.currentSettings();
+			description = card.getDescription();
+			profileSetNames = card.getProfileSets().stream().map(NmdProfileSet::getName).toArray(String[]::new);
+
+			// get all words in the profileSet names and card description and clean them.
+			// the profile itself is cached, so the tokens are not
+			Set<String> names = card.getProfileSets().stream().map(NmdProfileSet::getName).collect(Collectors.toSet());
+			names.add(card.getDescription());
+			String totalDescription = String.join(" ", names);
+			keyWords = Collections.unmodifiableList(
+					new ArrayList<String>(NmdTextTokenizer.SHARED.tokenizeUncached(totalDescription).getWords()));
+		}
+
+		/**
+		 * @return the distinct normalized words of the card. The list can not be
+		 *         modified.
+		 */
+		List<String> getKeyWords() {
+			return keyWords;
+		}
+
+		private boolean isProfileOf(NmdProductCard card) {
+			if (settings != NmdTextTokenizer.SHARED.currentSettings()
+					|| !Objects.equals(description, card.getDescription())) {
+				return false;
+			}
+			List<NmdProfileSet> profileSets = card.getProfileSets();
+			if (profileSets.size() != profileSetNames.length) {
+				return false;
+			}
+			int i = 0;
+			for (NmdProfileSet profileSet : profileSets) {
+				if (!Objects.equals(profileSet.getName(), profileSetNames[i])) {
+					return false;
+				}
+				i++;
+			}
+			return true;
+		}
+	}
+}
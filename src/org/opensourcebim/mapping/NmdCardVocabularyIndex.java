@@ -0,0 +1,195 @@
+package org.opensourcebim.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.tno.bim.nmd.domain.NmdProductCard;
+
+/**
+ * Inverted index of the keywords of a list of product cards. Every distinct
+ * keyword is stored once and the cards refer to their keywords by id, so the
+ * distance of a material word to a keyword is determined once for all cards
+ * that contain it. Card scores are then sums of the closest keyword distances
+ * and equal to scoring every card separately, but distances are only
+ * determined as far as they can still change the selection.
+ */
+class NmdCardVocabularyIndex {
+
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+	// guards the distance budget of a card against rounding of the penalties
+	private static final double BUDGET_TOLERANCE = 1e-9;
+
+	private final List<NmdProductCard> cards;
+	private final List<String> vocabulary;
+	// the keyword ids of every distinct card and the card for every position
+	private final int[][] cardKeyWords;
+	private final int[] cardOfPosition;
+
+	/**
+	 * @param cards product cards with their profile sets loaded. Cards can occur
+	 *              multiple times.
+	 */
+	NmdCardVocabularyIndex(List<NmdProductCard> cards) {
+		this.cards = cards;
+		this.vocabulary = new ArrayList<String>();
+		this.cardOfPosition = new int[cards.size()];
+
+		Map<String, Integer> keyWordIds = new HashMap<String, Integer>();
+		IdentityHashMap<NmdProductCard, Integer> cardIds = new IdentityHashMap<NmdProductCard, Integer>();
+		List<int[]> keyWordsOfCards = new ArrayList<int[]>();
+		for (int position = 0; position < cards.size(); position++) {
+			NmdProductCard card = cards.get(position);
+			Integer cardId = cardIds.get(card);
+			if (cardId == null) {
+				cardId = keyWordsOfCards.size();
+				cardIds.put(card, cardId);
+
+				List<String> keyWords = NmdCardProfileCache.SHARED.getProfile(card).getKeyWords();
+				int[] ids = new int[keyWords.size()];
+				for (int i = 0; i < ids.length; i++) {
+					Integer id = keyWordIds.get(keyWords.get(i));
+					if (id == null) {
+						id = vocabulary.size();
+						keyWordIds.put(keyWords.get(i), id);
+						vocabulary.add(keyWords.get(i));
+					}
+					ids[i] = id;
+				}
+				keyWordsOfCards.add(ids);
+			}
+			cardOfPosition[position] = cardId;
+		}
+		this.cardKeyWords = keyWordsOfCards.toArray(new int[keyWordsOfCards.size()][]);
+	}
+
+	/**
+	 * select the cards of which the similarity score is within the cut off ratio of
+	 * the best score. The score of a card is the sum of the edit distances of every
+	 * material word to the closest keyword of the card plus a penalty on the
+	 * difference in word count. The exact score of the first card bounds the
+	 * scores that can still be selected, so distances beyond the remaining budget
+	 * of a card are not determined exactly and cards that exceed it are dropped.
+	 * 
+	 * @param materialWords distinct words of a material description
+	 * @param cutOffRatio   ratio of the best score that selected scores may exceed
+	 *                      it by
+	 * @return the selected cards in order of increasing score. Cards with equal
+	 *         scores keep their order.
+	 */
+	List<NmdProductCard> selectWithinCutOff(Set<String> materialWords, double cutOffRatio) {
+		if (materialWords.isEmpty() || cards.isEmpty()) {
+			return new ArrayList<NmdProductCard>();
+		}
+
+		String[] words = materialWords.toArray(new String[materialWords.size()]);
+		double[] penalties = new double[cardKeyWords.length];
+		for (int card = 0; card < cardKeyWords.length; card++) {
+			// penalize on word count difference
+			penalties[card] = ResolverSettings.descriptionLengthPenaltyCoefficient
+					* Math.abs(cardKeyWords[card].length - words.length);
+		}
+		int[][] knownDistances = new int[words.length][vocabulary.size()];
+		for (int[] known : knownDistances) {
+			Arrays.fill(known, UNKNOWN);
+		}
+		NmdStringDistance distance = NmdStringDistance.forCurrentThread();
+
+		double firstScore = penalties[0];
+		for (int w = 0; w < words.length; w++) {
+			firstScore += closestDistance(distance, words[w], knownDistances[w], 0, Integer.MAX_VALUE);
+		}
+		double maxScore = firstScore * (1 + cutOffRatio);
+
+		double[] scores = new double[cardKeyWords.length];
+		boolean[] exceeded = new boolean[cardKeyWords.length];
+		for (int w = 0; w < words.length; w++) {
+			for (int card = 0; card < cardKeyWords.length; card++) {
+				if (exceeded[card]) {
+					continue;
+				}
+				// the largest distance that keeps the card within the maximum score
+				double budget = maxScore - penalties[card] - scores[card];
+				int bound = budget >= Integer.MAX_VALUE - 1 ? Integer.MAX_VALUE
+						: (int) Math.floor(budget + BUDGET_TOLERANCE) + 1;
+				int closest = bound <= 0 ? bound : closestDistance(distance, words[w], knownDistances[w], card, bound);
+				if (closest >= bound) {
+					exceeded[card] = true;
+				} else {
+					scores[card] += (double) closest;
+				}
+			}
+		}
+
+		double best = Double.POSITIVE_INFINITY;
+		for (int card = 0; card < cardKeyWords.length; card++) {
+			scores[card] = exceeded[card] ? Double.POSITIVE_INFINITY : scores[card] + penalties[card];
+			best = Math.min(best, scores[card]);
+		}
+
+		// only sort the cards that are within the cut off
+		List<Integer> selected = new ArrayList<Integer>();
+		for (int position = 0; position < cardOfPosition.length; position++) {
+			if (scores[cardOfPosition[position]] <= best * (1 + cutOffRatio)) {
+				selected.add(position);
+			}
+		}
+		Collections.sort(selected, Comparator.comparingDouble(position -> scores[cardOfPosition[position]]));
+
+		List<NmdProductCard> res = new ArrayList<NmdProductCard>(selected.size());
+		for (int position : selected) {
+			res.add(cards.get(position));
+		}
+		return res;
+	}
+
+	/**
+	 * @param known distances of the word to the keywords determined so far
+	 * @return the distance of a word to the closest keyword of a card when it is
+	 *         smaller than the bound, otherwise a value of at least the bound. A
+	 *         card without keywords is at the distance of the word length.
+	 */
+	private int closestDistance(NmdStringDistance distance, String word, int[] known, int card, int bound) {
+		if (cardKeyWords[card].length == 0) {
+			return word.length();
+		}
+		int closest = bound;
+		for (int id : cardKeyWords[card]) {
+			closest = Math.min(closest, keyWordDistance(distance, word, known, id, closest));
+			if (closest == 0) {
+				break;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * @return the distance of a word to a keyword when it is smaller than the
+	 *         bound, otherwise a value of at least the bound. Exact distances and
+	 *         lower bounds are kept, so a keyword shared by cards is compared once
+	 *         unless a card allows a larger distance.
+	 */
+	private int keyWordDistance(NmdStringDistance distance, String word, int[] known, int id, int bound) {
+		int value = known[id];
+		if (value >= 0) {
+			return value;
+		}
+		if (value != UNKNOWN && -value >= bound) {
+			return -value;
+		}
+		int res = distance.distance(word, vocabulary.get(id), bound);
+		// exact distances are stored as is, lower bounds negated
+		known[id] = res < bound ? res : -res;
+		return res;
+	}
+
+	int getVocabularySize() {
+		return vocabulary.size();
+	}
+}
@@ -9,15 +9,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.opensourcebim.ifccollection.MaterialSource;
 import org.opensourcebim.ifccollection.MpgElement;
 import org.opensourcebim.ifccollection.MpgGeometry;
@@ -51,7 +45,7 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 	private NmdDataService service;
 	private MappingDataService mappingService;
 	private MpgObjectStore store;
-	private Set<String> keyWords;
+	private NmdKeywordAutomaton keyWords;
 
 	public NmdDataResolverImpl() {	}
 
@@ -70,8 +64,16 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 	@Override
 	public void setMappingService(MappingDataService mappingService) {
 		this.mappingService = mappingService;
+		refreshKeyWords();
+	}
+
+	/**
+	 * reload the material keywords from the mapping service
+	 */
+	public void refreshKeyWords() {
 		if (mappingService != null) {
-			keyWords = mappingService.getKeyWordMappings(ResolverSettings.keyWordOccurenceMininum).keySet();
+			keyWords = new NmdKeywordAutomaton(
+					mappingService.getKeyWordMappings(ResolverSettings.keyWordOccurenceMininum).keySet());
 		}
 	}
 
@@ -113,6 +115,9 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 			getService().login();
 			getService().preLoadData();
 
+			// elements that kept their mapping from an earlier collection
+			this.retrieveMissingProductCards();
+
 			// first check if there are already mappings available for this dataset
 			MappingSet set = this.tryApplyEarlierMappings();
 			if (set == null) {
@@ -122,9 +127,9 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 			set.setRevisionId(store.getRevisionId());
 			set.setDate(new Date());
 
-			Map<String, List<MpgElement>> elGroups = store.getElementGroups();
+			List<List<MpgElement>> elGroups = store.getElementGroupList();
 			boolean addedNewMapping = false;
-			for (List<MpgElement> elGroup : elGroups.values()) {
+			for (List<MpgElement> elGroup : elGroups) {
 				MpgElement element = elGroup.get(0);
 				// element could already have a mapping through a decomposes relation
 				// in that case skip to the next one.
@@ -160,6 +165,28 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 		}
 	}
 
+	/**
+	 * Retrieve the product cards of material map ids that have no card in the
+	 * store. This is the case for objects that were reused from a collection of
+	 * which the cards were not kept, for instance a store read from a snapshot.
+	 */
+	private void retrieveMissingProductCards() {
+		Set<Long> missingIds = new HashSet<Long>();
+		for (MpgElement el : store.getElements()) {
+			for (Integer id : el.getProductIds()) {
+				if (store.getProductCard(id) == null) {
+					missingIds.add((long) id);
+				}
+			}
+		}
+		if (!missingIds.isEmpty()) {
+			List<NmdProductCard> cards = this.getService().getProductCardsByIds(new ArrayList<Long>(missingIds));
+			if (cards != null) {
+				cards.forEach(store::addProductCard);
+			}
+		}
+	}
+
 	/**
 	 * Check whether there is already a mappingset available for the given
 	 * project/revision combination and apply any earlier stored mappings based on
@@ -308,12 +335,7 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 	 * @return the nlsfb codes found in the input string
 	 */
 	public static Set<String> tryGetNlsfbCodes(String inputString) {
-		Matcher m = Pattern.compile("(\\d{2}\\.\\d{2})").matcher(inputString);
-		Set<String> res = new HashSet<String>();
-		while (m.find()) {
-			res.add(m.group(1));
-		}
-		return res;
+		return new HashSet<String>(NmdTextTokenizer.SHARED.tokenize(inputString).getNlsfbCodes());
 	}
 
 	/**
@@ -326,23 +348,20 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 	public Set<String> tryGetKeyMaterials(String objectName) {
 		Set<String> objectDescription = NmdDataResolverImpl.parseStringForWords(objectName);
 		Set<String> res = new HashSet<String>();
-		if (!objectDescription.isEmpty()) {
-			for (String word : objectDescription) {
-				for (String key : keyWords) {
-					if (word.contains(key)) {
-						res.add(word);
-					}
-				}
+		for (String word : objectDescription) {
+			if (keyWords.occursIn(word)) {
+				res.add(word);
 			}
 		}
 		return res;
 	}
 
+	/**
+	 * @return the distinct normalized words of a description. The set can not be
+	 *         modified.
+	 */
 	private static Set<String> parseStringForWords(String objectName) {
-		return Arrays.asList(objectName.split(ResolverSettings.splitChars)).stream()
-				.map(w -> w.replaceAll(ResolverSettings.numericReplacePattern, "").toLowerCase().trim())
-				.filter(w -> w.length() >= ResolverSettings.minWordLengthForSimilarityCheck)
-				.collect(Collectors.toSet());
+		return NmdTextTokenizer.SHARED.tokenize(objectName).getWords();
 	}
 
 	private void resolveNmdMappingForElement(MpgElement mpgElement) {
@@ -454,9 +473,10 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 		// Find per material the most likely candidates that fall within the
 		// specifications
 		allProducts.forEach(p -> getService().getAdditionalProfileDataForCard(p));
+		NmdCardVocabularyIndex cardIndex = new NmdCardVocabularyIndex(allProducts);
 
 		for (MaterialSource mat : mats) {
-			List<NmdProductCard> productOptions = selectProductsBasedOnStringSimilarity(mat.getName(), allProducts);
+			List<NmdProductCard> productOptions = selectProductsBasedOnStringSimilarity(mat.getName(), cardIndex);
 
 			// check if a decent enough filter has been made. if not tag that there are too
 			// many options.
@@ -501,81 +521,16 @@ public class NmdDataResolverImpl implements NmdDataResolver {
 	/**
 	 * Detemrine the top list of products based on a string similarity score
 	 * 
-	 * @param name        material name
-	 * @param allProducts preselected list of cadidate productcards
+	 * @param name      material name
+	 * @param cardIndex index of the preselected cadidate productcards
 	 * @return selection of productcards based on similarity score and cutoff
 	 *         criteria
 	 */
-	private List<NmdProductCard> selectProductsBasedOnStringSimilarity(String name, List<NmdProductCard> allProducts) {
-		List<Pair<NmdProductCard, Double>> prods = new ArrayList<Pair<NmdProductCard, Double>>();
-		List<NmdProductCard> res = new ArrayList<NmdProductCard>();
-
+	private List<NmdProductCard> selectProductsBasedOnStringSimilarity(String name, NmdCardVocabularyIndex cardIndex) {
 		Set<String> materialDescription = parseStringForWords(name);
 
-		if (materialDescription.isEmpty()) {
-			return res;
-		}
-
-		allProducts.forEach(p -> prods
-				.add(new ImmutablePair<NmdProductCard, Double>(p, getProductSimilarityScore(materialDescription, p))));
-
 		// determine the best product and benchmark with the other remaining candidates.
-		prods.sort((p1, p2) -> Double.compare(p1.getValue(), p2.getValue()));
-		Double benchMark = prods.get(0).getValue();
-		for (Pair<NmdProductCard, Double> pv : prods) {
-			if (pv.getValue() <= benchMark * (1 + ResolverSettings.cutOffSimilarityRatio)) {
-				res.add(pv.getKey());
-			}
-		}
-		return res;
-	}
-
-	/**
-	 * Determine the similarity of the material wrt the various descriptions within
-	 * a productCard
-	 * 
-	 * @param refWord reference word to search for within the product card
-	 * @param card    NmdProductCard object with > 0 profileSets
-	 * @return the minimum levensthein distance of the reference word wrt any of the
-	 *         profileSet names
-	 */
-	private Double getProductSimilarityScore(Set<String> refWords, NmdProductCard card) {
-		// get all words in the profileSet names and card description and clean them
-		Set<String> map = card.getProfileSets().stream().map(ps -> ps.getName()).collect(Collectors.toSet());
-		map.add(card.getDescription());
-		String totalDescription = String.join(" ", map);
-		Set<String> keyWords = NmdDataResolverImpl.parseStringForWords(totalDescription);
-
-		return calculateSimilarityScore(refWords, keyWords.stream().collect(Collectors.toList()));
-	}
-
-	/**
-	 * Determine the similarity based on a a list of materials descriptions and a
-	 * list of product card descriptions
-	 * 
-	 * @param materialDescriptors list of words found in the material
-	 * @param productCardKeyWords list of words found in the product card
-	 * @return a score to indicate word similarity. lwoer scores indicate a larger
-	 *         similarity
-	 */
-	@SuppressWarnings("deprecation")
-	private Double calculateSimilarityScore(Set<String> materialDescriptors, List<String> productCardKeyWords) {
-
-		BiFunction<String, String, Double> score = (ref, check) -> {
-			return (double) StringUtils.getLevenshteinDistance((CharSequence) ref, check);
-		};
-
-		Double sum = 0.0;
-		for (String ref : materialDescriptors) {
-			productCardKeyWords.sort((w1, w2) -> Double.compare(score.apply(ref, w1), score.apply(ref, w2)));
-
-			sum += score.apply(ref, productCardKeyWords.get(0));
-		}
-
-		// penalize on word count difference
-		sum += ResolverSettings.descriptionLengthPenaltyCoefficient
-				* Math.abs(productCardKeyWords.size() - materialDescriptors.size());
-		return sum;
+		return cardIndex.selectWithinCutOff(materialDescription, ResolverSettings.cutOffSimilarityRatio);
 	}
 
 	/**
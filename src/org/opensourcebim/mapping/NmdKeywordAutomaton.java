@@ -0,0 +1,124 @@
+package org.opensourcebim.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a set of keywords. Determines in a single pass
+ * over a text whether any of the keywords occurs in it. The transitions of
+ * every state are stored as sorted character arrays.
+ */
+class NmdKeywordAutomaton {
+
+	private static final int ROOT = 0;
+
+	private final char[][] labels;
+	private final int[][] targets;
+	private final int[] failure;
+	// true if a keyword ends in the state or in any of its failure states
+	private final boolean[] isMatch;
+
+	/**
+	 * @param keyWords the keywords to search for. Null values are ignored.
+	 */
+	NmdKeywordAutomaton(Collection<String> keyWords) {
+		// build the trie of the keywords
+		List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		List<Boolean> ends = new ArrayList<Boolean>();
+		trie.add(new TreeMap<Character, Integer>());
+		ends.add(false);
+		for (String key : keyWords) {
+			if (key == null) {
+				continue;
+			}
+			int state = ROOT;
+			for (int i = 0; i < key.length(); i++) {
+				Integer next = trie.get(state).get(key.charAt(i));
+				if (next == null) {
+					next = trie.size();
+					trie.get(state).put(key.charAt(i), next);
+					trie.add(new TreeMap<Character, Integer>());
+					ends.add(false);
+				}
+				state = next;
+			}
+			ends.set(state, true);
+		}
+
+		int size = trie.size();
+		labels = new char[size][];
+		targets = new int[size][];
+		failure = new int[size];
+		isMatch = new boolean[size];
+		for (int state = 0; state < size; state++) {
+			TreeMap<Character, Integer> transitions = trie.get(state);
+			labels[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+				labels[state][i] = transition.getKey();
+				targets[state][i] = transition.getValue();
+				i++;
+			}
+			isMatch[state] = ends.get(state);
+		}
+
+		// determine the failure states breadth first, so the failure state of the
+		// parent is known when a state is visited
+		int[] queue = new int[size];
+		int head = 0;
+		int tail = 0;
+		for (int child : targets[ROOT]) {
+			failure[child] = ROOT;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			isMatch[state] |= isMatch[failure[state]];
+			for (int i = 0; i < labels[state].length; i++) {
+				int child = targets[state][i];
+				failure[child] = next(failure[state], labels[state][i]);
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * @param text any text
+	 * @return true if any of the keywords occurs in the text
+	 */
+	boolean occursIn(CharSequence text) {
+		if (isMatch[ROOT]) {
+			return true;
+		}
+		int state = ROOT;
+		for (int i = 0; i < text.length(); i++) {
+			state = next(state, text.charAt(i));
+			if (isMatch[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the state after reading a character, following failure states when
+	 *         there is no transition
+	 */
+	private int next(int state, char c) {
+		while (true) {
+			int i = Arrays.binarySearch(labels[state], c);
+			if (i >= 0) {
+				return targets[state][i];
+			}
+			if (state == ROOT) {
+				return ROOT;
+			}
+			state = failure[state];
+		}
+	}
+}
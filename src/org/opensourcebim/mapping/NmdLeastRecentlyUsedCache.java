@@ -0,0 +1,25 @@
+package org.opensourcebim.mapping;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map that drops its least recently used entry when it exceeds a maximum
+ * number of entries. Is not thread safe, wrap it in a synchronized map when it
+ * is shared.
+ */
+class NmdLeastRecentlyUsedCache<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	private final int maxEntries;
+
+	NmdLeastRecentlyUsedCache(int maxEntries) {
+		super(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > maxEntries;
+	}
+}
@@ -0,0 +1,183 @@
+package org.opensourcebim.mapping;
+
+import java.util.List;
+
+/**
+ * Levenshtein distances between a pattern word and candidate words. Uses the
+ * bit-parallel algorithm of Myers (in the formulation of Hyyro) for ascii
+ * patterns of at most 64 characters and a two row dynamic programming table
+ * otherwise. Distances are only determined exactly up to an upper bound, so
+ * candidates that can not improve on the best match found so far are left
+ * early. Instances are not thread safe, use {@link #forCurrentThread()} to get
+ * the buffers of the calling thread.
+ */
+class NmdStringDistance {
+
+	private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+	private static final int ALPHABET_SIZE = 128;
+
+	private static final ThreadLocal<NmdStringDistance> BUFFERS = ThreadLocal.withInitial(NmdStringDistance::new);
+
+	// match masks of the characters of the pattern
+	private final long[] peq;
+	private String pattern;
+	private boolean isBitParallel;
+
+	private int[] previousRow;
+	private int[] currentRow;
+
+	NmdStringDistance() {
+		peq = new long[ALPHABET_SIZE];
+		previousRow = new int[16];
+		currentRow = new int[16];
+	}
+
+	static NmdStringDistance forCurrentThread() {
+		return BUFFERS.get();
+	}
+
+	/**
+	 * @param pattern the word to determine the distances from
+	 * @param words   candidate words
+	 * @return the smallest distance between the pattern and any of the words, or
+	 *         the length of the pattern when there are no words
+	 */
+	int minDistance(String pattern, List<String> words) {
+		setPattern(pattern);
+		int best = pattern.length();
+		if (words.isEmpty()) {
+			return best;
+		}
+		best = Integer.MAX_VALUE;
+		for (String word : words) {
+			best = Math.min(best, distance(word, best));
+			if (best == 0) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param pattern the word to determine the distances from
+	 * @param text    any word
+	 * @return the Levenshtein distance between the pattern and the text
+	 */
+	int distance(String pattern, CharSequence text) {
+		setPattern(pattern);
+		return distance(text, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param pattern the word to determine the distances from
+	 * @param text    any word
+	 * @param bound   upper bound of the distances of interest
+	 * @return the Levenshtein distance between the pattern and the text when it is
+	 *         smaller than the bound, otherwise a value of at least the bound
+	 */
+	int distance(String pattern, CharSequence text, int bound) {
+		setPattern(pattern);
+		return distance(text, bound);
+	}
+
+	private void setPattern(String pattern) {
+		if (pattern.equals(this.pattern)) {
+			return;
+		}
+		if (this.isBitParallel) {
+			for (int i = 0; i < this.pattern.length(); i++) {
+				peq[this.pattern.charAt(i)] = 0L;
+			}
+		}
+
+		this.pattern = pattern;
+		this.isBitParallel = pattern.length() <= MAX_BIT_PARALLEL_LENGTH;
+		for (int i = 0; i < pattern.length() && isBitParallel; i++) {
+			isBitParallel = pattern.charAt(i) < ALPHABET_SIZE;
+		}
+		if (isBitParallel) {
+			for (int i = 0; i < pattern.length(); i++) {
+				peq[pattern.charAt(i)] |= 1L << i;
+			}
+		}
+	}
+
+	/**
+	 * @return the distance between the pattern and the text when it is smaller
+	 *         than the bound, otherwise a value of at least the bound
+	 */
+	private int distance(CharSequence text, int bound) {
+		int m = pattern.length();
+		int n = text.length();
+		if (Math.abs(m - n) >= bound) {
+			return bound;
+		}
+		if (m == 0 || n == 0) {
+			return Math.max(m, n);
+		}
+		return isBitParallel ? bitParallelDistance(text, bound) : tableDistance(text, bound);
+	}
+
+	private int bitParallelDistance(CharSequence text, int bound) {
+		int m = pattern.length();
+		int n = text.length();
+		long last = 1L << (m - 1);
+		long pv = -1L;
+		long mv = 0L;
+		int score = m;
+
+		for (int j = 0; j < n; j++) {
+			char c = text.charAt(j);
+			long eq = c < ALPHABET_SIZE ? peq[c] : 0L;
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if ((ph & last) != 0) {
+				score++;
+			} else if ((mh & last) != 0) {
+				score--;
+			}
+			// every remaining character lowers the distance by at most one
+			if (score - (n - j - 1) >= bound) {
+				return bound;
+			}
+			ph = (ph << 1) | 1L;
+			mh = mh << 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+		}
+		return score;
+	}
+
+	private int tableDistance(CharSequence text, int bound) {
+		int m = pattern.length();
+		int n = text.length();
+		if (previousRow.length <= m) {
+			previousRow = new int[m + 1];
+			currentRow = new int[m + 1];
+		}
+		for (int i = 0; i <= m; i++) {
+			previousRow[i] = i;
+		}
+
+		for (int j = 1; j <= n; j++) {
+			char c = text.charAt(j - 1);
+			currentRow[0] = j;
+			int rowMin = j;
+			for (int i = 1; i <= m; i++) {
+				int cost = pattern.charAt(i - 1) == c ? 0 : 1;
+				int value = Math.min(Math.min(currentRow[i - 1] + 1, previousRow[i] + 1), previousRow[i - 1] + cost);
+				currentRow[i] = value;
+				rowMin = Math.min(rowMin, value);
+			}
+			if (rowMin >= bound) {
+				return bound;
+			}
+			int[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
+		}
+		return previousRow[m];
+	}
+}
@@ -0,0 +1,214 @@
+package org.opensourcebim.mapping;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Splits element, material and product card descriptions into normalized words
+ * and NLsfb codes in a single pass. The results are cached by input string as
+ * the same names occur for many elements; the least recently used results are
+ * dropped when the cache is full. When the split characters
+ * or replace pattern in the {@link ResolverSettings} differ from their defaults
+ * the words are determined with the regular expressions of the settings.
+ */
+class NmdTextTokenizer {
+
+	private static final int DEFAULT_MAX_CACHED_ENTRIES = 10000;
+
+	private static final String DEFAULT_SPLIT_CHARS = " |-|,|:|;|_";
+	private static final String DEFAULT_REPLACE_PATTERN = "[^a-zA-Z]";
+	private static final Pattern NLSFB_PATTERN = Pattern.compile("(\\d{2}\\.\\d{2})");
+	private static final int NLSFB_LENGTH = 5;
+
+	static final NmdTextTokenizer SHARED = new NmdTextTokenizer();
+
+	private final Map<String, Tokens> cache;
+	private volatile Settings settings;
+
+	NmdTextTokenizer() {
+		this(DEFAULT_MAX_CACHED_ENTRIES);
+	}
+
+	/**
+	 * @param maxCachedEntries number of texts of which the tokens are cached
+	 */
+	NmdTextTokenizer(int maxCachedEntries) {
+		cache = Collections.synchronizedMap(new NmdLeastRecentlyUsedCache<String, Tokens>(maxCachedEntries));
+		settings = new Settings();
+	}
+
+	/**
+	 * @param text any description
+	 * @return the distinct words and NLsfb codes in the text
+	 */
+	Tokens tokenize(String text) {
+		if (text == null || text.isEmpty()) {
+			return Tokens.EMPTY;
+		}
+		Settings current = currentSettings();
+		Tokens tokens = cache.get(text);
+		if (tokens == null) {
+			tokens = read(text, current);
+			cache.put(text, tokens);
+		}
+		return tokens;
+	}
+
+	/**
+	 * tokenize a text without caching the result. For texts that are rarely
+	 * repeated, such as product card descriptions, which would otherwise push the
+	 * element and material names out of the cache.
+	 * 
+	 * @param text any description
+	 * @return the distinct words and NLsfb codes in the text
+	 */
+	Tokens tokenizeUncached(String text) {
+		if (text == null || text.isEmpty()) {
+			return Tokens.EMPTY;
+		}
+		return read(text, currentSettings());
+	}
+
+	void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * @return the settings to tokenize with. Drops the cached results when the
+	 *         resolver settings have changed, the returned instance then differs
+	 *         from the earlier ones.
+	 */
+	Settings currentSettings() {
+		Settings current = settings;
+		if (!current.matchesResolverSettings()) {
+			current = new Settings();
+			settings = current;
+			cache.clear();
+		}
+		return current;
+	}
+
+	private static Tokens read(String text, Settings current) {
+		return current.isDefault ? read(text, current.minWordLength) : readWithPatterns(text, current);
+	}
+
+	private static Tokens read(String text, int minWordLength) {
+		Set<String> words = new HashSet<String>();
+		Set<String> codes = null;
+		StringBuilder word = new StringBuilder();
+		int codeEnd = 0;
+
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (i >= codeEnd && isNlsfbCodeAt(text, i)) {
+				if (codes == null) {
+					codes = new HashSet<String>();
+				}
+				codes.add(text.substring(i, i + NLSFB_LENGTH));
+				codeEnd = i + NLSFB_LENGTH;
+			}
+
+			if (isSplitChar(c)) {
+				addWord(words, word, minWordLength);
+			} else if (c >= 'A' && c <= 'Z') {
+				word.append((char) (c + ('a' - 'A')));
+			} else if (c >= 'a' && c <= 'z') {
+				word.append(c);
+			}
+		}
+		addWord(words, word, minWordLength);
+		return new Tokens(words, codes);
+	}
+
+	private static Tokens readWithPatterns(String text, Settings current) {
+		Set<String> words = Arrays.stream(current.splitPattern.split(text))
+				.map(w -> current.replacePattern.matcher(w).replaceAll("").toLowerCase().trim())
+				.filter(w -> w.length() >= current.minWordLength)
+				.collect(Collectors.toSet());
+
+		Set<String> codes = new HashSet<String>();
+		Matcher m = NLSFB_PATTERN.matcher(text);
+		while (m.find()) {
+			codes.add(m.group(1));
+		}
+		return new Tokens(words, codes);
+	}
+
+	private static void addWord(Set<String> words, StringBuilder word, int minWordLength) {
+		if (word.length() > 0 && word.length() >= minWordLength) {
+			words.add(word.toString());
+		}
+		word.setLength(0);
+	}
+
+	private static boolean isSplitChar(char c) {
+		return c == ' ' || c == '-' || c == ',' || c == ':' || c == ';' || c == '_';
+	}
+
+	/**
+	 * @return true if the text contains 2 digits, a period and 2 digits at the
+	 *         index
+	 */
+	private static boolean isNlsfbCodeAt(String text, int index) {
+		return index + NLSFB_LENGTH <= text.length()
+				&& isDigit(text.charAt(index)) && isDigit(text.charAt(index + 1))
+				&& text.charAt(index + 2) == '.'
+				&& isDigit(text.charAt(index + 3)) && isDigit(text.charAt(index + 4));
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Words and NLsfb codes of a text. The sets can not be modified.
+	 */
+	static class Tokens {
+
+		static final Tokens EMPTY = new Tokens(null, null);
+
+		private final Set<String> words;
+		private final Set<String> nlsfbCodes;
+
+		private Tokens(Set<String> words, Set<String> nlsfbCodes) {
+			this.words = words == null ? Collections.emptySet() : Collections.unmodifiableSet(words);
+			this.nlsfbCodes = nlsfbCodes == null ? Collections.emptySet() : Collections.unmodifiableSet(nlsfbCodes);
+		}
+
+		Set<String> getWords() {
+			return words;
+		}
+
+		Set<String> getNlsfbCodes() {
+			return nlsfbCodes;
+		}
+	}
+
+	/**
+	 * the resolver settings the cached results were determined with
+	 */
+	static class Settings {
+		private final String splitChars = ResolverSettings.splitChars;
+		private final String replaceRegex = ResolverSettings.numericReplacePattern;
+		private final int minWordLength = ResolverSettings.minWordLengthForSimilarityCheck;
+
+		// patterns are only compiled when the settings are not the default ones
+		private final boolean isDefault = DEFAULT_SPLIT_CHARS.equals(splitChars)
+				&& DEFAULT_REPLACE_PATTERN.equals(replaceRegex) && minWordLength > 0;
+		private final Pattern splitPattern = isDefault ? null : Pattern.compile(splitChars);
+		private final Pattern replacePattern = isDefault ? null : Pattern.compile(replaceRegex);
+
+		private boolean matchesResolverSettings() {
+			return splitChars.equals(ResolverSettings.splitChars)
+					&& replaceRegex.equals(ResolverSettings.numericReplacePattern)
+					&& minWordLength == ResolverSettings.minWordLengthForSimilarityCheck;
+		}
+	}
+}
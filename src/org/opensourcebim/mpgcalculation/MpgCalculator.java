@@ -2,9 +2,8 @@ package org.opensourcebim.mpgcalculation;
 
 import java.util.Set;
 
-import org.opensourcebim.ifccollection.MpgElement;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgObjectStore;
-import org.opensourcebim.ifccollection.MpgScalingOrientation;
 import org.opensourcebim.nmd.scaling.NmdScalingUnitConverter;
 
 import nl.tno.bim.nmd.domain.NmdCostFactor;
@@ -22,6 +21,7 @@ import nl.tno.bim.nmd.scaling.NmdScaler;
 public class MpgCalculator {
 
 	private MpgObjectStore objectStore = null;
+	private MpgFrozenStore frozenStore = null;
 	private MpgCalculationResults results;
 
 	public MpgCalculator() {
@@ -32,25 +32,37 @@ public class MpgCalculator {
 		setResults(new MpgCalculationResults());
 	}
 
+	/**
+	 * Calculate the results on the snapshot that has been set or otherwise on a
+	 * snapshot of the object store that has been set. The snapshot of an object
+	 * store is taken on the first calculation, set the store again to include
+	 * later changes.
+	 */
 	public MpgCalculationResults calculate(double designLife) {
 
-		if (objectStore == null) {
+		if (frozenStore == null && objectStore != null) {
+			frozenStore = objectStore.freeze();
+		}
+		MpgFrozenStore store = frozenStore;
+
+		if (store == null) {
 			results.SetResultsStatus(ResultStatus.NoData);
 			return results;
 		}
 
-		if (!(objectStore.isIfcDataComplete() && objectStore.isElementDataComplete())) {
+		if (!(store.isIfcDataComplete() && store.isElementDataComplete())) {
 			results.SetResultsStatus(ResultStatus.IncompleteData);
 		}
 
 		try {
 			results.setTotalLifeTime(designLife);
-			results.setTotalFloorArea(objectStore.getTotalFloorArea());
+			results.setTotalFloorArea(store.getTotalFloorArea());
 
 			// for each building material found:
-			for (MpgElement element : objectStore.getElements()) {
+			for (int element = 0; element < store.getElementCount(); element++) {
 
-				for (NmdProductCard product : element.getNmdProductCards()) {
+				for (int card = 0; card < store.getProductCardCount(element); card++) {
+					NmdProductCard product = store.getProductCard(element, card);
 
 					// Determine replacements required based on lifetime of productcard
 					// this is usually 1 for regular materials and > 1 for cyclic maintenance
@@ -61,25 +73,23 @@ public class MpgCalculator {
 
 					// get number of product units based on geometry of ifcproduct and unit of
 					// productcard
-					double unitsRequired = element.getRequiredNumberOfUnits(product);
+					double unitsRequired = store.getRequiredNumberOfUnits(element, product);
 
 					for (NmdProfileSet profielSet : product.getProfileSets()) {
 						if (profielSet.getQuantity() > 0.0) {
 							double scaleFactor = 1.0;
 							// determine scale factor based on scaler. if no scaler is present the
 							// unitsRequired is sufficient (and no scaling is applied)
-							if (element.requiresScaling() && profielSet.getIsScalable()) {
+							if (store.requiresScaling(element) && profielSet.getIsScalable()) {
 
 								if (profielSet.getScaler() != null) {
 									NmdScaler scaler = profielSet.getScaler();
 									int numDims = NmdScalingUnitConverter.getUnitDimension(product.getUnit());
 									if (numDims < 3) {
 
-										MpgScalingOrientation or = element.getMpgObject().getGeometry()
-												.getScalerOrientation(numDims);
-										Double[] dims = or.getScaleDims();
+										Double[] dims = store.getScaleDims(element, numDims);
 										Double unitConversionFactor = NmdScalingUnitConverter
-												.getScalingUnitConversionFactor(scaler.getUnit(), this.getObjectStore());
+												.getScalingUnitConversionFactor(scaler.getUnit(), store.getLengthUnit());
 
 										scaleFactor = scaler.scaleWithConversion(dims, unitConversionFactor);
 									}
@@ -92,9 +102,9 @@ public class MpgCalculator {
 									* categoryMultiplier * scaleFactor;
 
 							// example for production
+							Long objectId = store.getObjectId(store.getElementObject(element));
 							profielSet.getAllFaseProfielen().values().forEach(fp -> {
 								Set<NmdCostFactor> factors = fp.calculateFactors(lifeTimeUnitsPerProfiel);
-								Long objectId = element.getMpgObject().getObjectId();
 								results.addCostFactors(factors, product.getDescription(), profielSet.getName(), objectId);
 							});
 						}
@@ -117,6 +127,20 @@ public class MpgCalculator {
 
 	public void setObjectStore(MpgObjectStore objectStore) {
 		this.objectStore = objectStore;
+		this.frozenStore = null;
+	}
+
+	public MpgFrozenStore getFrozenStore() {
+		return frozenStore;
+	}
+
+	/**
+	 * Set a snapshot of an object store to calculate on. Services freeze the
+	 * mapped store and release it, so only the snapshot is kept in memory.
+	 */
+	public void setFrozenStore(MpgFrozenStore frozenStore) {
+		this.frozenStore = frozenStore;
+		this.objectStore = null;
 	}
 
 	/**
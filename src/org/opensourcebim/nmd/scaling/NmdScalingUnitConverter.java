@@ -57,16 +57,25 @@ public final class NmdScalingUnitConverter {
 	 *         unit.
 	 */
 	public static Double getScalingUnitConversionFactor(String unit, MpgObjectStore store) {	
+		return getScalingUnitConversionFactor(unit, store.getLengthUnit());
+	}
+
+	/**
+	 * @see #getScalingUnitConversionFactor(String, MpgObjectStore)
+	 * @param unit - working unit of the nmd scaler
+	 * @param lengthUnit - length unit of the mpgObject dimensions
+	 */
+	public static Double getScalingUnitConversionFactor(String unit, LengthUnit lengthUnit) {
 		Double factor = 1.0;
 
 		switch (unit.toLowerCase()) {
 		case "mm":
 		case "millimeter":
-			factor = LengthUnit.MILLI_METER.convert(1.0, store.getLengthUnit());
+			factor = LengthUnit.MILLI_METER.convert(1.0, lengthUnit);
 			break;
 		case "m":
 		case "meter":
-			factor = LengthUnit.METER.convert(1.0, store.getLengthUnit());
+			factor = LengthUnit.METER.convert(1.0, lengthUnit);
 		default:
 			break;
 		}
@@ -1,13 +1,60 @@
 package org.opensourcebim.services;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.bimserver.bimbots.BimBotsException;
 import org.bimserver.bimbots.BimBotsOutput;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.store.BooleanType;
+import org.bimserver.models.store.IntegerType;
+import org.bimserver.models.store.ObjectDefinition;
+import org.bimserver.models.store.ParameterDefinition;
+import org.bimserver.models.store.PrimitiveDefinition;
+import org.bimserver.models.store.PrimitiveEnum;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.models.store.StringType;
+import org.bimserver.models.store.Type;
+import org.bimserver.plugins.PluginConfiguration;
 import org.bimserver.plugins.services.BimBotAbstractService;
+import org.opensourcebim.ifccollection.MpgCollectionStatistics;
+import org.opensourcebim.ifccollection.MpgIfcObjectCollector;
+import org.opensourcebim.ifccollection.MpgObjectStore;
+import org.opensourcebim.ifccollection.MpgProductFilter;
+import org.opensourcebim.ifccollection.MpgStoreSnapshotCache;
+import org.opensourcebim.mapping.MappingDataServiceRestImpl;
+import org.opensourcebim.mapping.NmdDataResolver;
+import org.opensourcebim.mapping.NmdDataResolverImpl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import nl.tno.bim.nmd.services.Nmd2DataService;
 
 public abstract class IfcObjectCollectionBaseService extends BimBotAbstractService {
+
+	// comma separated ifc types of the products to leave out of the collection
+	public static final String EXCLUDED_PRODUCT_TYPES_SETTING = "excludedProductTypes";
+	// number of threads that collect the products of a model
+	public static final String COLLECTION_PARALLELISM_SETTING = "collectionParallelism";
+
+	// reuse the results of earlier invocations on the same or an earlier revision
+	public static final String USE_SNAPSHOT_CACHE_SETTING = "useSnapshotCache";
+	// snapshots of collected revisions kept per service under the plugin root path
+	private static final String SNAPSHOT_CACHE_DIRECTORY = "snapshot-cache";
+	private static final long SNAPSHOT_CACHE_MAX_BYTES = 512L * 1024 * 1024;
+	private MpgStoreSnapshotCache snapshotCache = null;
+
+	// add the timers and counters of the collection to the json output
+	public static final String INCLUDE_STATISTICS_SETTING = "includeCollectionStatistics";
+	private static final String STATISTICS_FIELD = "collectionStatistics";
+	// statistics of all invocations of this service, exposed through JMX
+	private MpgCollectionStatistics serviceStatistics = null;
 	
 	@Override
 	public boolean preloadCompleteModel() {
@@ -19,19 +66,208 @@ public abstract class IfcObjectCollectionBaseService extends BimBotAbstractServi
 		return true;
 	}
 	
+	/**
+	 * @return the settings that can be given per invocation of the service
+	 */
+	@Override
+	public ObjectDefinition getUserSettingsDefinition() {
+		ObjectDefinition settings = StoreFactory.eINSTANCE.createObjectDefinition();
+
+		StringType excludedTypes = StoreFactory.eINSTANCE.createStringType();
+		excludedTypes.setValue(String.join(",", MpgProductFilter.DEFAULT_EXCLUDED_TYPES));
+		settings.getParameters().add(createSetting(EXCLUDED_PRODUCT_TYPES_SETTING, "Excluded product types",
+				"Comma separated ifc types of the products to leave out of the collection, including their subtypes",
+				PrimitiveEnum.STRING, excludedTypes));
+
+		IntegerType parallelism = StoreFactory.eINSTANCE.createIntegerType();
+		parallelism.setValue(1);
+		settings.getParameters().add(createSetting(COLLECTION_PARALLELISM_SETTING, "Collection parallelism",
+				"Number of threads that collect the products of a model, limited to the available processors",
+				PrimitiveEnum.INT, parallelism));
+
+		BooleanType useSnapshotCache = StoreFactory.eINSTANCE.createBooleanType();
+		useSnapshotCache.setValue(false);
+		settings.getParameters().add(createSetting(USE_SNAPSHOT_CACHE_SETTING, "Use snapshot cache",
+				"Reuse the results of earlier invocations on the same or an earlier revision of a stored project",
+				PrimitiveEnum.BOOLEAN, useSnapshotCache));
+
+		BooleanType includeStatistics = StoreFactory.eINSTANCE.createBooleanType();
+		includeStatistics.setValue(false);
+		settings.getParameters().add(createSetting(INCLUDE_STATISTICS_SETTING, "Include collection statistics",
+				"Add the timers and counters of the object collection to the json output", PrimitiveEnum.BOOLEAN,
+				includeStatistics));
+
+		return settings;
+	}
+
+	private static ParameterDefinition createSetting(String identifier, String name, String description,
+			PrimitiveEnum primitive, Type defaultValue) {
+		PrimitiveDefinition type = StoreFactory.eINSTANCE.createPrimitiveDefinition();
+		type.setType(primitive);
+
+		ParameterDefinition setting = StoreFactory.eINSTANCE.createParameterDefinition();
+		setting.setIdentifier(identifier);
+		setting.setName(name);
+		setting.setDescription(description);
+		setting.setRequired(false);
+		setting.setType(type);
+		setting.setDefaultValue(defaultValue);
+		return setting;
+	}
+	
+	/**
+	 * create an object collector for a single BimBot invocation
+	 * 
+	 * @param pluginConfiguration settings of the invocation
+	 * @return a collector with the configured product filter that adds its
+	 *         statistics to the statistics of this service
+	 */
+	protected MpgIfcObjectCollector createCollector(PluginConfiguration pluginConfiguration) {
+		MpgIfcObjectCollector collector = new MpgIfcObjectCollector(getServiceStatistics());
+		if (pluginConfiguration != null) {
+			collector.setProductFilter(
+					MpgProductFilter.fromSetting(pluginConfiguration.getString(EXCLUDED_PRODUCT_TYPES_SETTING)));
+			// the model is preloaded completely, so it can be read concurrently
+			Integer parallelism = pluginConfiguration.getInteger(COLLECTION_PARALLELISM_SETTING);
+			if (parallelism != null && parallelism > 1 && preloadCompleteModel()) {
+				collector.setParallelism(Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+			}
+		}
+		return collector;
+	}
+	
+	/**
+	 * @return the cache of collected revisions shared by the invocations of this
+	 *         service
+	 */
+	protected synchronized MpgStoreSnapshotCache getSnapshotCache() {
+		if (snapshotCache == null) {
+			snapshotCache = new MpgStoreSnapshotCache(getPluginContext().getRootPath()
+					.resolve(SNAPSHOT_CACHE_DIRECTORY).resolve(this.getClass().getSimpleName()), SNAPSHOT_CACHE_MAX_BYTES);
+		}
+		return snapshotCache;
+	}
+	
+	/**
+	 * collect the objects of a model, through the snapshot cache when the
+	 * invocation asks for it
+	 * 
+	 * @param pluginConfiguration settings of the invocation
+	 * @param collector           collector of this invocation
+	 * @param ifcModel            model to collect
+	 * @return the store with the objects of the model. The collector no longer
+	 *         refers to it.
+	 */
+	protected MpgObjectStore collectModel(PluginConfiguration pluginConfiguration, MpgIfcObjectCollector collector,
+			IfcModelInterface ifcModel) {
+		MpgObjectStore store;
+		if (pluginConfiguration != null
+				&& Boolean.TRUE.equals(pluginConfiguration.getBoolean(USE_SNAPSHOT_CACHE_SETTING))) {
+			store = collector.collectIfcModelObjects(ifcModel, getSnapshotCache());
+		} else {
+			store = collector.collectIfcModelObjects(ifcModel);
+		}
+		collector.releaseResults();
+		return store;
+	}
+
+	/**
+	 * add a store to the snapshot cache when it was collected through the cache
+	 * and not read from it. Should be called after the store is complete, so the
+	 * resolved mappings are part of the snapshot.
+	 * 
+	 * @param collector collector of this invocation
+	 * @param store     the store returned by {@link #collectModel}
+	 */
+	protected void saveSnapshot(MpgIfcObjectCollector collector, MpgObjectStore store) {
+		collector.saveSnapshot(store);
+	}
+
+	/**
+	 * resolve the NMD product cards of the elements of a collected store
+	 * 
+	 * @param store collected store
+	 * @return the store with the resolved mappings
+	 */
+	protected MpgObjectStore resolveNmdMappings(MpgObjectStore store) {
+		NmdDataResolver resolver = new NmdDataResolverImpl();
+		resolver.setNmdService(new Nmd2DataService(getPluginContext().getRootPath()));
+		resolver.setMappingService(new MappingDataServiceRestImpl());
+		resolver.setStore(store);
+		resolver.nmdToMpg();
+		return resolver.getStore();
+	}
+
+	/**
+	 * @return the statistics of all invocations of this service. Registered as
+	 *         MBean on first use, replacing the MBean of an earlier instance of
+	 *         this service (after a plugin reload).
+	 */
+	protected synchronized MpgCollectionStatistics getServiceStatistics() {
+		if (serviceStatistics == null) {
+			serviceStatistics = new MpgCollectionStatistics();
+			try {
+				ObjectName name = new ObjectName("org.opensourcebim:type=CollectionStatistics,service="
+						+ ObjectName.quote(this.getClass().getSimpleName()));
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(serviceStatistics, name);
+			} catch (JMException e) {
+				// the statistics are still available to the json output
+				System.err.println("unable to register collection statistics: " + e.getMessage());
+			}
+		}
+		return serviceStatistics;
+	}
+
+	/**
+	 * @return the statistics of the collector when the invocation asks for them,
+	 *         otherwise null
+	 */
+	protected MpgCollectionStatistics getReportedStatistics(PluginConfiguration pluginConfiguration,
+			MpgIfcObjectCollector collector) {
+		if (pluginConfiguration != null
+				&& Boolean.TRUE.equals(pluginConfiguration.getBoolean(INCLUDE_STATISTICS_SETTING))) {
+			return collector.getStatistics();
+		}
+		return null;
+	}
+
 	protected BimBotsOutput toBimBotsJsonOutput(Object results, String outputDescription) throws BimBotsException {
+		return toBimBotsJsonOutput(results, null, outputDescription);
+	}
+
+	/**
+	 * @param statistics statistics to add to the output, or null to leave them
+	 *                   out. Results that are not a json object are wrapped in an
+	 *                   object with a results field.
+	 */
+	protected BimBotsOutput toBimBotsJsonOutput(Object results, MpgCollectionStatistics statistics,
+			String outputDescription) throws BimBotsException {
 		// convert output with Jackon
 		byte[] ifcJsonResults;
 		try {
 			ObjectMapper mapper = new ObjectMapper();
-			ifcJsonResults = mapper.writeValueAsBytes(results);
+			if (statistics == null) {
+				ifcJsonResults = mapper.writeValueAsBytes(results);
+			} else {
+				JsonNode tree = mapper.valueToTree(results);
+				ObjectNode output = tree instanceof ObjectNode ? (ObjectNode) tree : mapper.createObjectNode();
+				if (output != tree) {
+					output.set("results", tree);
+				}
+				output.set(STATISTICS_FIELD, mapper.valueToTree(statistics));
+				ifcJsonResults = mapper.writeValueAsBytes(output);
+			}
 			
 			BimBotsOutput output = new BimBotsOutput(getOutputSchema(), ifcJsonResults);
 			output.setContentType("application/json");
 			output.setTitle(outputDescription);
 			return output;
 			
-		} catch (JsonProcessingException e) {
+		} catch (JsonProcessingException | IllegalArgumentException e) {
 			throw new BimBotsException("Unable to convert retrieved objects to Json", 500);
 		}
 	}
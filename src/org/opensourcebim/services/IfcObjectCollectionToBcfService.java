@@ -10,6 +10,7 @@ import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.plugins.PluginConfiguration;
 import org.opensourcebim.bcf.BcfException;
 import org.opensourcebim.bcfexport.ObjectStoreToBcfConverter;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgIfcObjectCollector;
 import org.opensourcebim.ifccollection.MpgObjectStore;
 
@@ -21,8 +22,11 @@ public class IfcObjectCollectionToBcfService extends IfcObjectCollectionBaseServ
 		IfcModelInterface ifcModel = input.getIfcModel();
 
 		// Get properties from ifcModel
-		MpgIfcObjectCollector matParser = new MpgIfcObjectCollector();
-		MpgObjectStore store = matParser.collectIfcModelObjects(ifcModel);
+		MpgIfcObjectCollector matParser = createCollector(pluginConfiguration);
+		MpgObjectStore collected = collectModel(pluginConfiguration, matParser, ifcModel);
+		saveSnapshot(matParser, collected);
+		// only a snapshot of the collected store is kept for the export
+		MpgFrozenStore store = collected.freeze();
 		ObjectStoreToBcfConverter converter = new ObjectStoreToBcfConverter(store, input);
 		
 		BimBotsOutput output = null;
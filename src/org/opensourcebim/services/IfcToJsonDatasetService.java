@@ -7,6 +7,7 @@ import org.bimserver.bimbots.BimBotsOutput;
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.plugins.PluginConfiguration;
 import org.opensourcebim.ifcanalysis.GuidDataSet;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgIfcObjectCollector;
 import org.opensourcebim.ifccollection.MpgObjectStore;
 
@@ -19,12 +20,16 @@ public class IfcToJsonDatasetService extends IfcObjectCollectionBaseService {
 		IfcModelInterface ifcModel = input.getIfcModel();
 
 		// Get properties from ifcModel
-		MpgIfcObjectCollector matParser = new MpgIfcObjectCollector();
-		MpgObjectStore store = matParser.collectIfcModelObjects(ifcModel);
+		MpgIfcObjectCollector matParser = createCollector(pluginConfiguration);
+		MpgObjectStore collected = collectModel(pluginConfiguration, matParser, ifcModel);
+		saveSnapshot(matParser, collected);
+		// only a snapshot of the collected store is kept for the dataset
+		MpgFrozenStore store = collected.freeze();
 		
 		GuidDataSet dataset = new GuidDataSet(store);
 		
-		return this.toBimBotsJsonOutput(dataset, "guid property dataset results");
+		return this.toBimBotsJsonOutput(dataset, getReportedStatistics(pluginConfiguration, matParser),
+				"guid property dataset results");
 	}
 
 	@Override
@@ -8,11 +8,6 @@ import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.plugins.PluginConfiguration;
 import org.opensourcebim.ifccollection.MpgIfcObjectCollector;
 import org.opensourcebim.ifccollection.MpgObjectStore;
-import org.opensourcebim.mapping.MappingDataServiceRestImpl;
-import org.opensourcebim.mapping.NmdDataResolver;
-import org.opensourcebim.mapping.NmdDataResolverImpl;
-
-import nl.tno.bim.nmd.services.Nmd2DataService;
 
 public class IfcToMpgCollectionService extends IfcObjectCollectionBaseService {
 
@@ -23,17 +18,15 @@ public class IfcToMpgCollectionService extends IfcObjectCollectionBaseService {
 		IfcModelInterface ifcModel = input.getIfcModel();
 		
 		// Get properties from ifcModel
-		MpgIfcObjectCollector matParser = new MpgIfcObjectCollector();
-		MpgObjectStore ifcResults = matParser.collectIfcModelObjects(ifcModel);
+		MpgIfcObjectCollector matParser = createCollector(pluginConfiguration);
 		
-		// resolve any ifc to nmd coupling
-		NmdDataResolver resolver = new NmdDataResolverImpl();
-		resolver.setNmdService(new Nmd2DataService(getPluginContext().getRootPath()));
-		resolver.setMappingService(new MappingDataServiceRestImpl());
-		resolver.setStore(ifcResults);
-		resolver.nmdToMpg();
+		// resolve any ifc to nmd coupling. the json output is written from the
+		// store itself
+		MpgObjectStore ifcResults = resolveNmdMappings(collectModel(pluginConfiguration, matParser, ifcModel));
+		saveSnapshot(matParser, ifcResults);
 				
-		return this.toBimBotsJsonOutput(resolver.getStore(), "results object collection");
+		return this.toBimBotsJsonOutput(ifcResults, getReportedStatistics(pluginConfiguration, matParser),
+				"results object collection");
 	}
 
 	@Override
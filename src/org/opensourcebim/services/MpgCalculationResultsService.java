@@ -6,16 +6,12 @@ import org.bimserver.bimbots.BimBotsInput;
 import org.bimserver.bimbots.BimBotsOutput;
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.plugins.PluginConfiguration;
+import org.opensourcebim.ifccollection.MpgFrozenStore;
 import org.opensourcebim.ifccollection.MpgIfcObjectCollector;
 import org.opensourcebim.ifccollection.MpgObjectStore;
-import org.opensourcebim.mapping.MappingDataServiceRestImpl;
-import org.opensourcebim.mapping.NmdDataResolver;
-import org.opensourcebim.mapping.NmdDataResolverImpl;
 import org.opensourcebim.mpgcalculation.MpgCalculationResults;
 import org.opensourcebim.mpgcalculation.MpgCalculator;
 
-import nl.tno.bim.nmd.services.Nmd2DataService;
-
 public class MpgCalculationResultsService extends IfcObjectCollectionBaseService {
 
 	@Override
@@ -25,23 +21,21 @@ public class MpgCalculationResultsService extends IfcObjectCollectionBaseService
 		IfcModelInterface ifcModel = input.getIfcModel();
 
 		// Get properties from ifcModel
-		MpgIfcObjectCollector matParser = new MpgIfcObjectCollector();
-		MpgObjectStore ifcResults = matParser.collectIfcModelObjects(ifcModel);
-		
-		// resolve any ifc to nmd coupling
-		NmdDataResolver resolver = new NmdDataResolverImpl();
+		MpgIfcObjectCollector matParser = createCollector(pluginConfiguration);
 		
-		resolver.setNmdService(new Nmd2DataService(getPluginContext().getRootPath()));
-		resolver.setMappingService(new MappingDataServiceRestImpl());
-		resolver.setStore(ifcResults);
-		resolver.nmdToMpg();
+		// resolve any ifc to nmd coupling. only a snapshot of the mapped store is
+		// kept for the calculation
+		MpgObjectStore collected = resolveNmdMappings(collectModel(pluginConfiguration, matParser, ifcModel));
+		saveSnapshot(matParser, collected);
+		MpgFrozenStore mappedStore = collected.freeze();
 		
 		// calculate the mpg scores
 		MpgCalculator calculator = new MpgCalculator();
-		calculator.setObjectStore(resolver.getStore());
+		calculator.setFrozenStore(mappedStore);
 		MpgCalculationResults calcResults = calculator.calculate(75.0);
 		
-		return this.toBimBotsJsonOutput(calcResults, "mpg calculation results");
+		return this.toBimBotsJsonOutput(calcResults, getReportedStatistics(pluginConfiguration, matParser),
+				"mpg calculation results");
 	}
 
 	@Override
@@ -24,14 +24,18 @@ import org.bimserver.models.ifc2x3tc1.IfcMaterialSelect;
 import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
 import org.bimserver.models.ifc2x3tc1.IfcProduct;
 import org.bimserver.models.ifc2x3tc1.IfcProject;
+import org.bimserver.models.ifc2x3tc1.IfcPropertySetDefinition;
 import org.bimserver.models.ifc2x3tc1.IfcRelAssociates;
 import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
 import org.bimserver.models.ifc2x3tc1.IfcRelDecomposes;
 import org.bimserver.models.ifc2x3tc1.IfcRelDefines;
+import org.bimserver.models.ifc2x3tc1.IfcRelDefinesByType;
 import org.bimserver.models.ifc2x3tc1.IfcRelSpaceBoundary;
 import org.bimserver.models.ifc2x3tc1.IfcSIPrefix;
 import org.bimserver.models.ifc2x3tc1.IfcSIUnit;
 import org.bimserver.models.ifc2x3tc1.IfcSpace;
+import org.bimserver.models.ifc2x3tc1.IfcTypeObject;
+import org.bimserver.models.ifc2x3tc1.IfcTypeProduct;
 import org.bimserver.models.ifc2x3tc1.IfcUnit;
 import org.bimserver.models.ifc2x3tc1.IfcUnitAssignment;
 import org.bimserver.models.ifc2x3tc1.IfcUnitEnum;
@@ -48,6 +52,7 @@ public class IfcMockFactory {
 	private GeometryInfo geometry = null;
 	private EList<IfcRelAssociates> associations = null;
 	private IfcSIPrefix projectUnitPrefix = IfcSIPrefix.NULL;
+	private long nextOid = 1;
 
 	public IfcMockFactory() {
 		setGeometry(getGeometryInfoMock(1, 1));
@@ -247,6 +252,31 @@ public class IfcMockFactory {
 		return geom;
 	}
 
+	/**
+	 * Let a product of the model be defined by a type object
+	 * 
+	 * @param product    product that should get the type
+	 * @param typeObject the type of the product
+	 */
+	public void setTypeOfProduct(IfcProduct product, IfcTypeObject typeObject) {
+		IfcRelDefinesByType relation = mock(IfcRelDefinesByType.class);
+		when(relation.getRelatingType()).thenReturn(typeObject);
+		BasicEList<IfcRelDefines> definitions = new BasicEList<IfcRelDefines>();
+		definitions.add(relation);
+		when(product.getIsDefinedBy()).thenReturn(definitions);
+	}
+
+	/**
+	 * Get a type object with the current associations and without property sets
+	 */
+	public IfcTypeProduct getIfcTypeProductMock(long oid) {
+		IfcTypeProduct typeObject = mock(IfcTypeProduct.class);
+		when(typeObject.getOid()).thenReturn(oid);
+		when(typeObject.getHasAssociations()).thenReturn(associations);
+		when(typeObject.getHasPropertySets()).thenReturn(new BasicEList<IfcPropertySetDefinition>());
+		return typeObject;
+	}
+
 	public IfcRelAssociatesMaterial getRelAssociatesMaterialMock(IfcMaterialSelect material) {
 		IfcRelAssociatesMaterial association = mock(IfcRelAssociatesMaterial.class);
 		when(association.getRelatingMaterial()).thenReturn(material);
@@ -276,6 +306,7 @@ public class IfcMockFactory {
 
 	public IfcMaterialLayer getIfcMaterialLayerMock(String name, double thickness) {
 		IfcMaterialLayer layer = mock(IfcMaterialLayer.class);
+		when(layer.getOid()).thenReturn(nextOid++);
 		when(layer.getLayerThickness()).thenReturn(thickness);
 
 		IfcMaterial mat = getIfcMaterialMock(name);
@@ -287,6 +318,7 @@ public class IfcMockFactory {
 	public IfcMaterialLayerSet getIfcMaterialLayerSetMock(List<Entry<String, Double>> layers) {
 
 		IfcMaterialLayerSet layerSet = mock(IfcMaterialLayerSet.class);
+		when(layerSet.getOid()).thenReturn(nextOid++);
 		EList<IfcMaterialLayer> layerList = new BasicEList<IfcMaterialLayer>();
 		layers.forEach((layer) -> {
 			layerList.add(getIfcMaterialLayerMock(layer.getKey() == null ? "" : layer.getKey(), layer.getValue()));
@@ -0,0 +1,49 @@
+package org.opensourcebim.ifccollection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensourcebim.ifccollection.MpgGeometryDataParser.GeometryData;
+
+public class MpgGeometryDataParserTest {
+
+	private MpgGeometryDataParser parser;
+
+	@Before
+	public void setUp() throws Exception {
+		parser = new MpgGeometryDataParser();
+	}
+
+	@Test
+	public void testParserReadsRequiredValuesAndSkipsOthers() throws IOException {
+		GeometryData data = parser.parse("{\"TOTAL_SURFACE_AREA\":6,\"LARGEST_FACE_DIRECTION\":[0,0,1],"
+				+ "\"NESTED\":{\"SURFACE_AREA_ALONG_Z\":3},\"SURFACE_AREA_ALONG_Z\":1.5,\"LARGEST_FACE_AREA\":\"2.5\"}");
+
+		assertEquals(6.0, data.getTotalSurfaceArea(), 1e-8);
+		assertEquals(1.5, data.getSurfaceAreaAlongZ(), 1e-8);
+		assertEquals(2.5, data.getLargestFaceArea(), 1e-8);
+		assertTrue(Double.isNaN(data.getBoundingBoxX()));
+	}
+
+	@Test
+	public void testEmptyDataIsEmpty() throws IOException {
+		assertTrue(parser.parse(null).isEmpty());
+		assertTrue(parser.parse("{}").isEmpty());
+	}
+
+	@Test
+	public void testIdenticalDataIsParsedOnce() throws IOException {
+		String json = "{\"SURFACE_AREA_ALONG_Z\":1.0}";
+		assertSame(parser.parse(json), parser.parse(new String(json)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidDataThrowsException() throws IOException {
+		parser.parse("{\"SURFACE_AREA_ALONG_Z\":");
+	}
+}
@@ -1,6 +1,13 @@
 package org.opensourcebim.ifccollection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
@@ -10,15 +17,19 @@ import java.util.Map.Entry;
 
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.models.ifc2x3tc1.IfcFurnishingElement;
+import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSet;
 import org.bimserver.models.ifc2x3tc1.IfcOpeningElement;
 import org.bimserver.models.ifc2x3tc1.IfcProduct;
 import org.bimserver.models.ifc2x3tc1.IfcRelAssociates;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
 import org.bimserver.models.ifc2x3tc1.IfcSIPrefix;
 import org.bimserver.models.ifc2x3tc1.IfcSpace;
+import org.bimserver.models.ifc2x3tc1.IfcTypeProduct;
 import org.eclipse.emf.common.util.BasicEList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.opensourcebim.mapping.NmdMappingType;
 
 public class MpgIfcObjectCollectorTest {
 
@@ -123,6 +134,20 @@ public class MpgIfcObjectCollectorTest {
 		assertEquals(2, collector.results().getAllMaterialNames().count());
 	}
 	
+	@Test
+	public void testEqualMaterialNamesOfDifferentProductsShareASingleInstance() {
+		factory.addMaterial(new String("aluminium"));
+		factory.addProductToModel(ifcModel, null, null);
+		factory.setAssociations(new BasicEList<>());
+		factory.addMaterial(new String("aluminium"));
+		factory.addProductToModel(ifcModel, null, null);
+
+		collector.collectIfcModelObjects(ifcModel);
+		List<MpgObject> objects = collector.results().getObjects();
+		assertSame(objects.get(0).getListedMaterials().get(0).getName(),
+				objects.get(1).getListedMaterials().get(0).getName());
+	}
+	
 	@Test
 	public void testAddMaterialsThatAreNotLinkedToGeometry() {
 		factory.addMaterial("aluminium");		
@@ -364,4 +389,169 @@ public class MpgIfcObjectCollectorTest {
 		assertEquals(0, collector.results().getSpaces().size());
 		assertEquals(0, collector.results().getObjects().size());
 	}
+	
+	@Test
+	public void testSharedLayerSetIsResolvedOncePerCollection() {
+		List<Entry<String, Double>> layers = new ArrayList<Entry<String, Double>>();
+		layers.add(new AbstractMap.SimpleEntry<>("brick", 0.1));
+		layers.add(new AbstractMap.SimpleEntry<>("rockwool", 0.3));
+		factory.addMaterialLayerSet(layers);
+		factory.addProductToModel(ifcModel, null, null);
+		factory.addProductToModel(ifcModel, null, null);
+
+		collector.collectIfcModelObjects(ifcModel);
+
+		IfcMaterialLayerSet layerSet = (IfcMaterialLayerSet) ((IfcRelAssociatesMaterial) ifcModel
+				.getAllWithSubTypes(IfcProduct.class).get(0).getHasAssociations().get(0)).getRelatingMaterial();
+		verify(layerSet, times(1)).getMaterialLayers();
+		for (MpgObject obj : collector.results().getObjects()) {
+			assertEquals(.25, obj.getLayers().get(0).getVolume(), 1e-8);
+			assertEquals(.75, obj.getLayers().get(1).getVolume(), 1e-8);
+		}
+	}
+
+	@Test
+	public void testCollectorOmitsConfiguredProductTypes() {
+		factory.addProductToModel(ifcModel, null, null);
+		collector.setProductFilter(MpgProductFilter.fromSetting("IfcSpace, IfcBuildingElement"));
+		collector.collectIfcModelObjects(ifcModel);
+
+		assertEquals(Arrays.asList("IfcSpace", "IfcBuildingElement"), collector.getProductFilter().getExcludedTypes());
+		assertEquals(0, collector.results().getObjects().size());
+	}
+
+	@Test
+	public void testTypeObjectMaterialsAreResolvedOncePerCollection() {
+		factory.addProductToModel(ifcModel, "wall 1", null);
+		factory.addProductToModel(ifcModel, "wall 2", null);
+		factory.addMaterial("brick");
+		IfcTypeProduct wallType = factory.getIfcTypeProductMock(42);
+		ifcModel.getAllWithSubTypes(IfcProduct.class).forEach(p -> factory.setTypeOfProduct(p, wallType));
+
+		collector.collectIfcModelObjects(ifcModel);
+
+		verify(wallType, times(1)).getHasAssociations();
+		for (MpgObject obj : collector.results().getObjects()) {
+			assertEquals(Arrays.asList("brick"), obj.getMaterialNamesBySource("type"));
+		}
+	}
+
+	@Test
+	public void testCollectionStatisticsAreRecordedForCollectorAndStore() {
+		factory.addProductToModel(ifcModel, "wall 1", null);
+		factory.addProductToModel(ifcModel, "wall 2", null);
+		IfcTypeProduct wallType = factory.getIfcTypeProductMock(42);
+		ifcModel.getAllWithSubTypes(IfcProduct.class).forEach(p -> factory.setTypeOfProduct(p, wallType));
+
+		collector.collectIfcModelObjects(ifcModel);
+
+		MpgCollectionStatistics statistics = collector.getStatistics();
+		assertEquals(2, statistics.getCount(MpgCollectionStatistics.Counter.PRODUCTS_SEEN));
+		assertEquals(0, statistics.getCount(MpgCollectionStatistics.Counter.PRODUCTS_SKIPPED));
+		assertTrue(statistics.getCount(MpgCollectionStatistics.Counter.TYPE_CACHE_HITS) > 0);
+		assertEquals(1, statistics.getCalls(MpgCollectionStatistics.Phase.SPACES));
+		assertEquals(2, statistics.getCalls(MpgCollectionStatistics.Phase.GEOMETRY));
+		assertEquals(2, statistics.getCalls(MpgCollectionStatistics.Phase.MATERIALS));
+		assertEquals(1, statistics.getCalls(MpgCollectionStatistics.Phase.RELATIONS));
+		assertEquals(statistics, ((MpgObjectStoreImpl) collector.results()).getStatistics());
+	}
+
+	@Test
+	public void testCollectorPushesObjectsAndRelationsToSink() {
+		factory.addProductToModel(ifcModel, "parent", null);
+		String parentId = ifcModel.getAllWithSubTypes(IfcProduct.class).get(0).getGlobalId();
+		factory.addProductToModel(ifcModel, "child", parentId);
+		String childId = ifcModel.getAllWithSubTypes(IfcProduct.class).get(1).getGlobalId();
+
+		List<String> events = new ArrayList<String>();
+		collector.collectIfcModelObjects(ifcModel, new MpgCollectionSink() {
+			@Override
+			public void objectCollected(String elementId, MpgObject object) {
+				events.add("object " + object.getGlobalId());
+			}
+
+			@Override
+			public void parentRelationCollected(String childGuid, String parentGuid) {
+				events.add("relation " + childGuid + " " + parentGuid);
+			}
+
+			@Override
+			public void collectionFinished() {
+				events.add("finished");
+			}
+		});
+
+		assertEquals(Arrays.asList("object " + parentId, "object " + childId, "relation " + childId + " " + parentId,
+				"finished"), events);
+		assertEquals(0, collector.results().getObjects().size());
+	}
+
+	@Test
+	public void testIncrementalCollectionReusesUnchangedObjectsAndMappings() {
+		factory.addMaterial("brick");
+		factory.addProductToModel(ifcModel, "unchanged", null);
+		factory.addProductToModel(ifcModel, "changed", null);
+		factory.addProductToModel(ifcModel, "removed", null);
+		List<IfcProduct> products = ifcModel.getAllWithSubTypes(IfcProduct.class);
+		String unchangedId = products.get(0).getGlobalId();
+		String changedId = products.get(1).getGlobalId();
+
+		// a plain collection is not fingerprinted, so its objects can not be reused
+		MpgObjectStore plain = collector.collectIfcModelObjects(ifcModel);
+		assertNull(((MpgObjectImpl) plain.getObjectByGuid(unchangedId).get()).getProductFingerprint());
+
+		MpgObjectStore previous = collector.collectIfcModelObjects(ifcModel, (MpgObjectStore) null);
+		MpgObject unchanged = previous.getObjectByGuid(unchangedId).get();
+		MpgObject changed = previous.getObjectByGuid(changedId).get();
+		previous.getElementByObjectGuid(unchangedId).setMappingMethod(NmdMappingType.UserMapping);
+
+		// next revision: one product is renamed, one is removed and one is added
+		when(products.get(1).getName()).thenReturn("renamed");
+		products.remove(2);
+		factory.addProductToModel(ifcModel, "added", null);
+
+		MpgObjectStore next = collector.collectIfcModelObjects(ifcModel, previous);
+
+		assertEquals(3, next.getObjects().size());
+		assertSame(unchanged, next.getObjectByGuid(unchangedId).get());
+		assertEquals(NmdMappingType.UserMapping, next.getElementByObjectGuid(unchangedId).getMappingMethod());
+		assertNotSame(changed, next.getObjectByGuid(changedId).get());
+		assertEquals("renamed", next.getObjectByGuid(changedId).get().getObjectName());
+		assertSame(next, collector.results());
+	}
+
+	@Test
+	public void testParallelCollectionEqualsSequentialCollection() {
+		factory.addMaterialLayer("brick", 0.1);
+		factory.addMaterial("steel");
+		for (int i = 0; i < 300; i++) {
+			factory.addProductToModel(ifcModel, "product " + i, null);
+		}
+		String parentId = ifcModel.getAllWithSubTypes(IfcProduct.class).get(10).getGlobalId();
+		for (int i = 0; i < 20; i++) {
+			factory.addProductToModel(ifcModel, "child " + i, parentId);
+		}
+
+		collector.collectIfcModelObjects(ifcModel);
+		List<String> sequential = describeObjects(collector.results());
+
+		MpgIfcObjectCollector parallelCollector = new MpgIfcObjectCollector();
+		parallelCollector.setParallelism(4);
+		parallelCollector.collectIfcModelObjects(ifcModel);
+		List<String> parallel = describeObjects(parallelCollector.results());
+
+		assertEquals(320, sequential.size());
+		assertEquals(sequential, parallel);
+		assertEquals(collector.results().getElements().size(), parallelCollector.results().getElements().size());
+	}
+
+	private List<String> describeObjects(MpgObjectStore store) {
+		List<String> res = new ArrayList<String>();
+		for (MpgObject obj : store.getObjects()) {
+			res.add(obj.getGlobalId() + "|" + obj.getObjectName() + "|" + obj.getParentId() + "|"
+					+ obj.getGeometry().getVolume() + "|" + obj.getMaterialNamesBySource(null) + "|"
+					+ obj.getLayers().size());
+		}
+		return res;
+	}
 }
@@ -4,11 +4,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opensourcebim.mapping.NmdMappingType;
 
+import nl.tno.bim.nmd.domain.NmdProductCard;
+import nl.tno.bim.nmd.domain.NmdProductCardImpl;
+
 public class MpgObjectStoreTest {
 
 	private MpgObjectStore objectStore;
@@ -51,6 +59,77 @@ public class MpgObjectStoreTest {
 				objectStore.getElementsByProductType("Wall").get(0).getMappingMethod());
 	}
 	
+	@Test
+	public void testElementCanBeFoundByCaseInsensitiveName() {
+		MpgElement el = objectStore.addElement("Steel Beam");
+		assertEquals(el, objectStore.getElementByName("steel beam"));
+	}
+	
+	@Test
+	public void testElementCanBeFoundByObjectGuidAfterObjectIsSet() {
+		MpgElement el = objectStore.addElement("dummyMaterial");
+		MpgObject mpgObject = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		objectStore.addObject(mpgObject);
+		objectStore.setObjectForElement("dummyMaterial", mpgObject);
+		
+		assertEquals(el, objectStore.getElementByObjectGuid("a"));
+		assertEquals(mpgObject, objectStore.getObjectByGuid("a").get());
+		assertEquals(mpgObject, objectStore.getObjectByOid(1).get());
+	}
+	
+	@Test
+	public void testResetClearsObjectLookups() {
+		objectStore.addObject(new MpgObjectImpl(1, "a", "custom wall", "Wall", ""));
+		objectStore.reset();
+		assertFalse(objectStore.getObjectByGuid("a").isPresent());
+	}
+	
+	@Test
+	public void testChildrenAreFoundByValueOfParentGuid() {
+		addParentWithChildren();
+		
+		assertEquals(2, objectStore.getChildren(new String("parent")).count());
+		assertEquals(0, objectStore.getChildren("child1").count());
+	}
+	
+	@Test
+	public void testMappingParentSetsIndirectMappingOnChildren() {
+		addParentWithChildren();
+		
+		objectStore.getElementByObjectGuid("parent").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		
+		assertEquals(NmdMappingType.IndirectThroughParent,
+				objectStore.getElementByObjectGuid("child1").getMappingMethod());
+		assertEquals(NmdMappingType.IndirectThroughParent,
+				objectStore.getElementByObjectGuid("child2").getMappingMethod());
+	}
+
+	@Test
+	public void testMappingAllChildrenSetsIndirectMappingOnParent() {
+		addParentWithChildren();
+
+		objectStore.getElementByObjectGuid("child1").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		assertEquals(NmdMappingType.None, objectStore.getElementByObjectGuid("parent").getMappingMethod());
+
+		objectStore.getElementByObjectGuid("child2").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		assertEquals(NmdMappingType.IndirectThroughChildren,
+				objectStore.getElementByObjectGuid("parent").getMappingMethod());
+	}
+
+	@Test
+	public void testUnmappingChildRevertsIndirectMappingOnParent() {
+		addParentWithChildren();
+		objectStore.getElementByObjectGuid("child1").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		objectStore.getElementByObjectGuid("child2").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+
+		objectStore.getElementByObjectGuid("child1").setMappingMethod(NmdMappingType.None);
+		assertEquals(NmdMappingType.None, objectStore.getElementByObjectGuid("parent").getMappingMethod());
+
+		objectStore.getElementByObjectGuid("child1").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		assertEquals(NmdMappingType.IndirectThroughChildren,
+				objectStore.getElementByObjectGuid("parent").getMappingMethod());
+	}
+
 	@Test
 	public void testVolumePerMaterialReturnsZeroOnNonExistingMaterial() {
 		assertEquals(0.0, objectStore.getTotalVolumeOfMaterial("some non existing material"), 1e-8);
@@ -85,6 +164,61 @@ public class MpgObjectStoreTest {
 		objectStore.addObject(mpgObject);
 	}
 	
+	@Test
+	public void testTotalVolumeIncludesLayersAddedAfterObjectIsStored() {
+		MpgObject first = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		MpgObject second = new MpgObjectImpl(2, "b", "custom slab", "Slab", "");
+		objectStore.addObject(first);
+		objectStore.addObject(second);
+		first.addLayer(new MpgLayerImpl(10, 1.0, "concrete", "1"));
+		second.addLayer(new MpgLayerImpl(5, 1.0, "concrete", "1"));
+		second.addLayer(new MpgLayerImpl(2, 1.0, "steel", "2"));
+
+		assertEquals(15, objectStore.getTotalVolumeOfMaterial("concrete"), 1e-8);
+		assertEquals(2, objectStore.getTotalVolumeOfMaterial("steel"), 1e-8);
+	}
+
+	@Test
+	public void testTotalVolumeExcludesLayersRemovedFromObject() {
+		MpgObject obj = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		objectStore.addObject(obj);
+		obj.addLayer(new MpgLayerImpl(10, 1.0, "concrete", "1"));
+		obj.addLayer(new MpgLayerImpl(5, 1.0, "concrete", "1"));
+		assertEquals(15, objectStore.getTotalVolumeOfMaterial("concrete"), 1e-8);
+
+		obj.getLayers().remove(1);
+		objectStore.objectChanged(obj);
+		assertEquals(10, objectStore.getTotalVolumeOfMaterial("concrete"), 1e-8);
+	}
+
+	@Test
+	public void testPropertiesAreKeptWhenObjectIsAddedToStore() {
+		MpgObjectImpl obj = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		obj.addProperty("width", 2.0);
+		obj.addProperty("finish", "painted");
+		objectStore.addObject(obj);
+		obj.addProperty("height", 3.0);
+
+		assertEquals(2.0, obj.getNumericProperty("width"), 1e-8);
+		assertEquals("painted", obj.getProperties().get("finish"));
+		assertEquals(3, obj.getProperties().size());
+	}
+
+	@Test
+	public void testElementsByProductTypeFollowChangesInObjectType() {
+		MpgElement el = objectStore.addElement("concrete");
+		MpgObjectImpl mpgObject = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		mpgObject.addMaterialSource("concrete", "1", "direct");
+		objectStore.addObject(mpgObject);
+		el.setMpgObject(mpgObject);
+		assertEquals(1, objectStore.getElementsByProductType("Wall").size());
+		assertEquals(1, objectStore.getAllMaterialNames().count());
+
+		mpgObject.setObjectType("Slab");
+		assertEquals(0, objectStore.getElementsByProductType("Wall").size());
+		assertEquals(el, objectStore.getElementsByProductType("Slab").get(0));
+	}
+
 	@Test
 	public void testTotalAreaOfSpacesReturnsZeroOnNoSpaces() {
 		assertEquals(0, objectStore.getTotalFloorArea(), 1e-8);
@@ -174,4 +308,154 @@ public class MpgObjectStoreTest {
 		assertTrue("warning found in objectstore while it should not be there.",
 				objectStore.isIfcDataComplete());
 	}
+	
+	@Test
+	public void testWarningCheckIsUpdatedWhenObjectChangesAfterAdding() {
+		MpgObjectImpl obj = new MpgObjectImpl(1, "a", "custom wall", "Wall", "");
+		obj.addLayer(new MpgLayerImpl(10, 1.0, "test material", Integer.toString("test material".hashCode())));
+		obj.setGeometry(builder.createDummyGeom(1.0, 1.0, 1.0));
+		objectStore.addObject(obj);
+		assertTrue(objectStore.isIfcDataComplete());
+		
+		obj.addLayer(new MpgLayerImpl(10, 1.0, null, null));
+		assertFalse(objectStore.isIfcDataComplete());
+		assertEquals(1, objectStore.getGuidsWithUndefinedLayerMats().getSize());
+	}
+	
+	@Test
+	public void testUndefinedChildMaterialIsReportedOnParent() {
+		addParentWithChildren();
+		MpgObject parent = objectStore.getObjectByGuid("parent").get();
+		
+		assertFalse(objectStore.hasUndefinedMaterials(parent, false));
+		assertTrue(objectStore.hasUndefinedMaterials(parent, true));
+		
+		objectStore.getObjectByGuid("child1").get().addMaterialSource("steel", "1", "direct");
+		objectStore.getObjectByGuid("child2").get().addMaterialSource("steel", "2", "direct");
+		assertFalse(objectStore.hasUndefinedMaterials(parent, true));
+	}
+	
+	@Test
+	public void testElementsWithEqualValuesAreGrouped() {
+		for (String guid : new String[] { "a", "b", "c" }) {
+			MpgElement el = objectStore.addElement(guid);
+			MpgObject obj = new MpgObjectImpl(guid.hashCode(), guid, "custom wall", "Wall", "");
+			obj.addMaterialSource("brick", guid, "direct");
+			objectStore.addObject(obj);
+			el.setMpgObject(obj);
+		}
+		assertEquals(1, objectStore.getElementGroupList().size());
+		assertEquals(3, objectStore.getElementGroupList().get(0).size());
+		assertEquals(3, objectStore.getElementGroups().get("custom wallWallbrick").size());
+		
+		objectStore.getObjectByGuid("c").get().addMaterialSource("steel", "c", "direct");
+		assertEquals(2, objectStore.getElementGroupList().size());
+		assertEquals(2, objectStore.getElementGroups().size());
+	}
+	
+	@Test
+	public void testProductCardsAreFoundById() {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < 40; i++) {
+			NmdProductCard card = builder.createDummyProductCard("card " + i, 1, "m2", 10, null);
+			objectStore.addProductCard(card);
+			ids.add(card.getProductId());
+		}
+
+		assertEquals(40, objectStore.getProductCards().size());
+		assertEquals("card 7", objectStore.getProductCard(ids.get(7)).getDescription());
+		List<NmdProductCard> cards = objectStore.getProductCards(Arrays.asList(ids.get(5), ids.get(3), ids.get(5)));
+		assertEquals(2, cards.size());
+		assertEquals("card 5", cards.get(0).getDescription());
+		assertEquals("card 3", cards.get(1).getDescription());
+
+		((MpgObjectStoreImpl) objectStore).removeProductCard(ids.get(3));
+		assertEquals(null, objectStore.getProductCard(ids.get(3)));
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i != 3, objectStore.getProductCard(ids.get(i)) != null);
+		}
+	}
+
+	@Test
+	public void testElementProductCardsAreUpdatedOnMapping() {
+		MpgElement el = objectStore.addElement("wall");
+		el.setMpgObject(new MpgObjectImpl(1, "a", "wall", "Wall", ""));
+		NmdProductCardImpl card = builder.createDummyProductCard("brick", 1, "m2", 10, null);
+		card.setProductId(1);
+		assertEquals(0, el.getNmdProductCards().size());
+
+		el.mapProductCard(new MaterialSource("1", "brick", "direct"), card);
+		assertEquals(1, el.getNmdProductCards().size());
+
+		el.removeProductCards();
+		assertEquals(0, el.getNmdProductCards().size());
+	}
+
+	@Test
+	public void testFrozenStoreContainsObjectValuesAndDecomposition() {
+		addParentWithChildren();
+		MpgObjectImpl child = (MpgObjectImpl) objectStore.getObjectByGuid("child1").get();
+		child.addMaterialSource("steel", "1", "direct");
+		child.addMaterialSource("paint", "2", "layer");
+		child.setGeometry(builder.createDummyGeom(1.0, 3.0, 2.0));
+
+		MpgFrozenStore frozen = objectStore.freeze();
+		int parent = frozen.indexOf("parent");
+		int frozenChild = frozen.indexOf("child1");
+
+		assertEquals(3, frozen.getObjectCount());
+		assertEquals(2, frozen.getChildCount(parent));
+		assertEquals("parent", frozen.getParentId(frozenChild));
+		assertEquals(Arrays.asList("steel"), frozen.getMaterialNamesBySource(frozenChild, "direct"));
+		assertEquals(Arrays.asList("steel", "paint"), frozen.getMaterialNamesBySource(frozenChild, null));
+		assertEquals(3.0, frozen.getSortedDimension(frozenChild, 0), 1e-8);
+		assertEquals(1.0, frozen.getSortedDimension(frozenChild, 2), 1e-8);
+	}
+
+	@Test
+	public void testObjectPropertiesAreReadBackThroughMapView() {
+		MpgObjectImpl obj = new MpgObjectImpl(1, "a", "wall", "Wall", "");
+		obj.addProperty("volume", 2.5);
+		obj.addProperty("loadbearing", "TRUE");
+		obj.addProperty("volume", 3.5);
+
+		assertEquals(2, obj.getProperties().size());
+		assertEquals(3.5, (double) obj.getProperties().get("volume"), 1e-8);
+		assertEquals("TRUE", obj.getProperties().get("loadbearing"));
+		assertEquals(null, obj.getNumericProperty("loadbearing"));
+		assertFalse(obj.getProperties().containsKey("area"));
+	}
+
+	@Test
+	public void testDeferredPropertiesAreResolvedOnceOnFirstAccess() {
+		MpgObjectImpl obj = new MpgObjectImpl(1, "a", "wall", "Wall", "");
+		List<String> resolutions = new ArrayList<String>();
+		obj.setDeferredProperties(target -> {
+			resolutions.add("resolved");
+			target.accept("volume", 2.5);
+			target.accept("loadbearing", "TRUE");
+		});
+		assertTrue(obj.hasDeferredProperties());
+		assertEquals(0, resolutions.size());
+
+		obj.addProperty("volume", 3.5);
+		assertEquals(3.5, obj.getNumericProperty("volume"), 1e-8);
+		assertEquals("TRUE", obj.getProperties().get("loadbearing"));
+		assertEquals(1, resolutions.size());
+		assertFalse(obj.hasDeferredProperties());
+	}
+
+	private void addParentWithChildren() {
+		HashMap<String, String> childToParent = new HashMap<String, String>();
+		for (String guid : new String[] { "parent", "child1", "child2" }) {
+			MpgElement el = objectStore.addElement(guid + " element");
+			MpgObject obj = new MpgObjectImpl(guid.hashCode(), guid, guid, "Wall", "");
+			objectStore.addObject(obj);
+			el.setMpgObject(obj);
+			if (!guid.equals("parent")) {
+				childToParent.put(guid, "parent");
+			}
+		}
+		((MpgObjectStoreImpl) objectStore).reloadParentChildRelationShips(childToParent);
+	}
 }
@@ -0,0 +1,102 @@
+package org.opensourcebim.ifccollection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.eclipse.emf.ecore.EClass;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MpgProductFilterTest {
+
+	private static final Ifc2x3tc1Package SCHEMA = Ifc2x3tc1Package.eINSTANCE;
+
+	private IfcModelInterface model;
+
+	@Before
+	public void setUp() throws Exception {
+		model = getModelMockWithSchema();
+	}
+
+	@Test
+	public void testProductsAreRetrievedPerIncludedClass() {
+		MpgProductFilter filter = new MpgProductFilter(Arrays.asList("IfcBuildingElement", "IfcSpace"));
+		List<IfcProduct> products = filter.getProducts(model);
+
+		verify(model, times(1)).getAll(SCHEMA.getIfcFlowTerminal());
+		verify(model, times(1)).getAll(SCHEMA.getIfcFurnishingElement());
+		assertEquals(1, products.stream().filter(p -> p.eClass() == SCHEMA.getIfcFlowTerminal()).count());
+	}
+
+	@Test
+	public void testExcludedClassesAndTheirSubclassesAreNotRetrieved() {
+		MpgProductFilter filter = new MpgProductFilter(Arrays.asList("IfcBuildingElement", "IfcSpace"));
+		filter.getProducts(model);
+
+		verify(model, never()).getAll(SCHEMA.getIfcBuildingElement());
+		verify(model, never()).getAll(SCHEMA.getIfcWall());
+		verify(model, never()).getAll(SCHEMA.getIfcWallStandardCase());
+		verify(model, never()).getAll(SCHEMA.getIfcSpace());
+		// abstract classes have no instances of their own
+		verify(model, never()).getAll(SCHEMA.getIfcProduct());
+		verify(model, never()).getAllWithSubTypes(IfcProduct.class);
+	}
+
+	@Test
+	public void testIncludesUsesTheClassesOfTheEvaluatedSchema() {
+		MpgProductFilter filter = new MpgProductFilter(Arrays.asList("IfcBuildingElement"));
+		filter.getProducts(model);
+
+		assertFalse(filter.includes(getProductMock(SCHEMA.getIfcWallStandardCase())));
+		assertTrue(filter.includes(getProductMock(SCHEMA.getIfcSpace())));
+		assertTrue(filter.includes(getProductMock(SCHEMA.getIfcFlowTerminal())));
+	}
+
+	/**
+	 * @return a model of which the package metadata is backed by the ifc2x3tc1
+	 *         schema and that contains a single product of every concrete class
+	 */
+	private IfcModelInterface getModelMockWithSchema() {
+		PackageMetaData metaData = mock(PackageMetaData.class);
+		when(metaData.getEPackage()).thenReturn(SCHEMA);
+		when(metaData.getEClass(anyString())).thenAnswer(i -> (EClass) SCHEMA.getEClassifier(i.getArgument(0)));
+		when(metaData.getAllSubClasses(any(EClass.class))).thenAnswer(i -> {
+			EClass superClass = i.getArgument(0);
+			return SCHEMA.getEClassifiers().stream()
+					.filter(c -> c instanceof EClass && c != superClass && superClass.isSuperTypeOf((EClass) c))
+					.map(c -> (EClass) c)
+					.collect(Collectors.toSet());
+		});
+
+		IfcModelInterface mockModel = mock(IfcModelInterface.class);
+		when(mockModel.getPackageMetaData()).thenReturn(metaData);
+		when(mockModel.getAll(any(EClass.class))).thenAnswer(i -> {
+			IdEObject product = getProductMock(i.getArgument(0));
+			return Arrays.asList(product);
+		});
+		return mockModel;
+	}
+
+	private IfcProduct getProductMock(EClass eClass) {
+		IfcProduct product = mock(IfcProduct.class);
+		when(product.eClass()).thenReturn(eClass);
+		return product;
+	}
+}
@@ -0,0 +1,165 @@
+package org.opensourcebim.ifccollection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensourcebim.mapping.NmdMappingType;
+
+public class MpgStoreSnapshotCacheTest {
+
+	private static final long CHECKSUM = 12345L;
+
+	private Path directory;
+	private ObjectStoreBuilder builder;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("snapshot-cache");
+		builder = new ObjectStoreBuilder();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> file.toFile().delete());
+		}
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	public void testSnapshotRestoresObjectsDecompositionAndMappings() throws IOException {
+		MpgObjectStoreImpl store = createStore(1L, 2L);
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		cache.save(store, "default", CHECKSUM);
+
+		MpgObjectStore loaded = cache.load(1L, 2L, "default", CHECKSUM);
+		assertNotNull(loaded);
+		assertEquals(Long.valueOf(2L), loaded.getRevisionId());
+		assertEquals(3, loaded.getObjects().size());
+		assertEquals(3, loaded.getElements().size());
+
+		MpgObjectImpl child = (MpgObjectImpl) loaded.getObjectByGuid("child").get();
+		assertEquals("parent", child.getParentId());
+		assertEquals(Long.valueOf(42L), child.getProductFingerprint());
+		assertEquals(6.0, child.getGeometry().getVolume(), 1e-8);
+		assertEquals("21.12", child.getNLsfbCode().print());
+		assertEquals(Arrays.asList("steel", "paint"), Arrays.asList(child.getListedMaterials().get(0).getName(),
+				child.getListedMaterials().get(1).getName()));
+		assertEquals(Integer.valueOf(7), child.getListedMaterials().get(0).getMapId());
+		assertEquals(1, child.getLayers().size());
+		assertEquals(3.5, (double) child.getProperties().get("width"), 1e-8);
+		assertEquals("TRUE", child.getProperties().get("loadbearing"));
+		assertEquals(NmdMappingType.DirectTotaalProduct,
+				loaded.getElementByObjectGuid("child").getMappingMethod());
+		assertEquals(NmdMappingType.IndirectThroughChildren,
+				loaded.getElementByObjectGuid("parent").getMappingMethod());
+	}
+
+	@Test
+	public void testSnapshotOfOtherModelContentIsNotUsed() throws IOException {
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		cache.save(createStore(1L, 2L), "default", CHECKSUM);
+
+		assertNull(cache.load(1L, 2L, "default", CHECKSUM + 1));
+		assertNotNull(cache.load(1L, 2L, "default", CHECKSUM));
+		assertNotNull(cache.loadPrevious(1L, 3L, "default"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreWithoutStoredRevisionIsNotCached() throws IOException {
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		cache.save(createStore(0L, 0L), "default", CHECKSUM);
+	}
+
+	@Test
+	public void testCorruptSnapshotIsRemoved() throws IOException {
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		cache.save(createStore(1L, 2L), "default", CHECKSUM);
+		try (Stream<Path> files = Files.list(directory)) {
+			Files.write(files.findFirst().get(), new byte[] { 1, 2, 3 });
+		}
+
+		assertNull(cache.load(1L, 2L, "default", CHECKSUM));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedSnapshotIsEvicted() throws IOException {
+		MpgStoreSnapshotCache unbounded = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		unbounded.save(createStore(1L, 1L), "default", CHECKSUM);
+		long snapshotSize = unbounded.size();
+		unbounded.save(createStore(1L, 2L), "default", CHECKSUM);
+
+		// revision 1 is used after revision 2 was written
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> file.toFile().setLastModified(0));
+		}
+		Files.setLastModifiedTime(directory.resolve("1-2-default.mpgsnapshot"), FileTime.fromMillis(1000));
+		assertNotNull(unbounded.load(1L, 1L, "default", CHECKSUM));
+
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, 2 * snapshotSize + snapshotSize / 2);
+		cache.save(createStore(1L, 3L), "default", CHECKSUM);
+
+		assertNotNull(cache.load(1L, 1L, "default", CHECKSUM));
+		assertNull(cache.load(1L, 2L, "default", CHECKSUM));
+		assertNotNull(cache.load(1L, 3L, "default", CHECKSUM));
+	}
+
+	@Test
+	public void testPreviousRevisionOfProjectIsLoaded() throws IOException {
+		MpgStoreSnapshotCache cache = new MpgStoreSnapshotCache(directory, Long.MAX_VALUE);
+		cache.save(createStore(1L, 2L), "default", CHECKSUM);
+		cache.save(createStore(1L, 4L), "default", CHECKSUM);
+		cache.save(createStore(1L, 6L), "default", CHECKSUM);
+		cache.save(createStore(3L, 5L), "default", CHECKSUM);
+		cache.save(createStore(1L, 5L), "other", CHECKSUM);
+
+		assertEquals(Long.valueOf(4L), cache.loadPrevious(1L, 5L, "default").getRevisionId());
+		assertNull(cache.loadPrevious(1L, 2L, "default"));
+		assertTrue(cache.size() > 0);
+	}
+
+	private MpgObjectStoreImpl createStore(Long projectId, Long revisionId) {
+		MpgObjectStoreImpl store = new MpgObjectStoreImpl();
+		store.setProjectId(projectId);
+		store.setRevisionId(revisionId);
+
+		HashMap<String, String> childToParent = new HashMap<String, String>();
+		for (String guid : new String[] { "parent", "child", "other" }) {
+			MpgElement el = store.addElement(guid + " element");
+			MpgObjectImpl obj = new MpgObjectImpl(guid.hashCode(), guid, guid, "Wall", "");
+			store.addObject(obj);
+			el.setMpgObject(obj);
+			if (guid.equals("child")) {
+				childToParent.put(guid, "parent");
+			}
+		}
+		store.reloadParentChildRelationShips(childToParent);
+
+		MpgObjectImpl child = (MpgObjectImpl) store.getObjectByGuid("child").get();
+		child.setProductFingerprint(42L);
+		child.setGeometry(builder.createDummyGeom(1.0, 2.0, 3.0));
+		child.setNLsfbCode("21.12");
+		child.addLayer(new MpgLayerImpl(6.0, 2.0, "steel", "1"));
+		child.addMaterialSource("steel", "1", "layer");
+		child.addMaterialSource("paint", "2", "direct");
+		child.getListedMaterials().get(0).setMapping(7, "staal");
+		child.addProperty("width", 3.5);
+		child.addProperty("loadbearing", "TRUE");
+		store.getElementByObjectGuid("child").setMappingMethod(NmdMappingType.DirectTotaalProduct);
+		return store;
+	}
+}
@@ -0,0 +1,96 @@
+package org.opensourcebim.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensourcebim.ifccollection.ObjectStoreBuilder;
+
+import nl.tno.bim.nmd.domain.NmdProductCardImpl;
+
+public class NmdCardProfileCacheTest {
+
+	private NmdCardProfileCache cache;
+	private ObjectStoreBuilder builder;
+	private int minWordLength;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new NmdCardProfileCache();
+		builder = new ObjectStoreBuilder();
+		minWordLength = ResolverSettings.minWordLengthForSimilarityCheck;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ResolverSettings.minWordLengthForSimilarityCheck = minWordLength;
+	}
+
+	@Test
+	public void testProfileContainsWordsOfDescriptionAndProfileSets() {
+		NmdProductCardImpl card = builder.createDummyProductCard("Kalkzandsteen wand", 1, "m2", 50, null);
+		card.addProfileSet(builder.createUnitProfileSet("lijmmortel", "m2", 50, 1.0));
+		card.addProfileSet(builder.createUnitProfileSet("kalkzandsteen-blok", "m2", 50, 1.0));
+
+		assertEquals(new HashSet<String>(Arrays.asList("kalkzandsteen", "wand", "lijmmortel", "blok")),
+				new HashSet<String>(cache.getProfile(card).getKeyWords()));
+	}
+
+	@Test
+	public void testProfileIsReusedForCardWithSameProductId() {
+		NmdProductCardImpl card = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdProductCardImpl reloaded = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		reloaded.setProductId(card.getProductId());
+
+		assertSame(cache.getProfile(card), cache.getProfile(reloaded));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testProfileIsRenewedWhenCardChanges() {
+		NmdProductCardImpl card = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdCardProfileCache.CardProfile profile = cache.getProfile(card);
+
+		card.addProfileSet(builder.createUnitProfileSet("wapening", "m2", 50, 1.0));
+		NmdCardProfileCache.CardProfile renewed = cache.getProfile(card);
+
+		assertNotSame(profile, renewed);
+		assertEquals(new HashSet<String>(Arrays.asList("beton", "vloer", "wapening")),
+				new HashSet<String>(renewed.getKeyWords()));
+		assertSame(renewed, cache.getProfile(card));
+	}
+
+	@Test
+	public void testProfileIsRenewedWhenTokenizerSettingsChange() {
+		NmdProductCardImpl card = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdCardProfileCache.CardProfile profile = cache.getProfile(card);
+
+		ResolverSettings.minWordLengthForSimilarityCheck = 6;
+		NmdCardProfileCache.CardProfile renewed = cache.getProfile(card);
+
+		assertNotSame(profile, renewed);
+		assertEquals(Arrays.asList(), renewed.getKeyWords());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedProfileIsEvicted() {
+		NmdCardProfileCache small = new NmdCardProfileCache(2);
+		NmdProductCardImpl floor = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdProductCardImpl wall = builder.createDummyProductCard("kalkzandsteen wand", 1, "m2", 50, null);
+		NmdProductCardImpl roof = builder.createDummyProductCard("bitumen dak", 1, "m2", 50, null);
+		NmdCardProfileCache.CardProfile floorProfile = small.getProfile(floor);
+		NmdCardProfileCache.CardProfile wallProfile = small.getProfile(wall);
+		small.getProfile(floor);
+		small.getProfile(roof);
+
+		assertEquals(2, small.size());
+		assertSame(floorProfile, small.getProfile(floor));
+		assertNotSame(wallProfile, small.getProfile(wall));
+	}
+}
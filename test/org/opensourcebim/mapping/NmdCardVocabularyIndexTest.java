@@ -0,0 +1,142 @@
+package org.opensourcebim.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensourcebim.ifccollection.ObjectStoreBuilder;
+
+import nl.tno.bim.nmd.domain.NmdProductCard;
+import nl.tno.bim.nmd.domain.NmdProductCardImpl;
+
+public class NmdCardVocabularyIndexTest {
+
+	private static final String[] WORDS = new String[] { "beton", "betonvloer", "kalkzandsteen", "baksteen", "hout",
+			"vurenhout", "staal", "wapening", "isolatie", "glaswol", "steenwol", "gips", "gipsplaat", "mortel" };
+
+	private ObjectStoreBuilder builder;
+
+	@Before
+	public void setUp() throws Exception {
+		builder = new ObjectStoreBuilder();
+	}
+
+	@Test
+	public void testSharedKeyWordsAreStoredOnce() {
+		NmdProductCardImpl floor = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdProductCardImpl wall = builder.createDummyProductCard("beton wand", 1, "m2", 50, null);
+		NmdCardVocabularyIndex index = new NmdCardVocabularyIndex(Arrays.asList(floor, wall, floor));
+
+		assertEquals(3, index.getVocabularySize());
+	}
+
+	@Test
+	public void testClosestCardIsSelectedFirst() {
+		NmdProductCardImpl floor = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdProductCardImpl wall = builder.createDummyProductCard("kalkzandsteen wand", 1, "m2", 50, null);
+		NmdCardVocabularyIndex index = new NmdCardVocabularyIndex(Arrays.asList(wall, floor));
+
+		List<NmdProductCard> selection = index.selectWithinCutOff(words("betonvloer"), 0.0);
+		assertEquals(1, selection.size());
+		assertSame(floor, selection.get(0));
+	}
+
+	@Test
+	public void testNoCardsAreSelectedForEmptyDescription() {
+		NmdProductCardImpl floor = builder.createDummyProductCard("beton vloer", 1, "m2", 50, null);
+		NmdCardVocabularyIndex index = new NmdCardVocabularyIndex(Arrays.asList(floor));
+
+		assertTrue(index.selectWithinCutOff(new HashSet<String>(), 0.5).isEmpty());
+	}
+
+	@Test
+	public void testSelectionIsEqualToScoringEveryCard() {
+		Random random = new Random(25);
+		for (int run = 0; run < 20; run++) {
+			List<NmdProductCard> cards = new ArrayList<NmdProductCard>();
+			for (int i = 0; i < 30; i++) {
+				if (!cards.isEmpty() && random.nextInt(5) == 0) {
+					// cards can be found through multiple nlsfb codes
+					cards.add(cards.get(random.nextInt(cards.size())));
+					continue;
+				}
+				NmdProductCardImpl card = builder.createDummyProductCard(randomDescription(random, 3), 1, "m2", 50,
+						null);
+				for (int j = random.nextInt(3); j > 0; j--) {
+					card.addProfileSet(builder.createUnitProfileSet(randomDescription(random, 2), "m2", 50, 1.0));
+				}
+				cards.add(card);
+			}
+			NmdCardVocabularyIndex index = new NmdCardVocabularyIndex(cards);
+
+			for (double cutOff : new double[] { 0.0, 0.2, 0.5, 2.0 }) {
+				Set<String> materialWords = words(
+						WORDS[random.nextInt(WORDS.length)] + " " + randomDescription(random, 2));
+				List<NmdProductCard> expected = selectExhaustively(cards, materialWords, cutOff);
+				List<NmdProductCard> actual = index.selectWithinCutOff(materialWords, cutOff);
+
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertSame(expected.get(i), actual.get(i));
+				}
+			}
+		}
+	}
+
+	private List<NmdProductCard> selectExhaustively(List<NmdProductCard> cards, Set<String> materialWords,
+			double cutOff) {
+		List<NmdProductCard> sorted = new ArrayList<NmdProductCard>(cards);
+		sorted.sort((c1, c2) -> Double.compare(score(materialWords, c1), score(materialWords, c2)));
+
+		double best = score(materialWords, sorted.get(0));
+		List<NmdProductCard> res = new ArrayList<NmdProductCard>();
+		for (NmdProductCard card : sorted) {
+			if (score(materialWords, card) <= best * (1 + cutOff)) {
+				res.add(card);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * score a single card: the distance of every material word to the closest
+	 * keyword of the card plus a penalty on the difference in word count
+	 */
+	private double score(Set<String> materialWords, NmdProductCard card) {
+		List<String> cardKeyWords = NmdCardProfileCache.SHARED.getProfile(card).getKeyWords();
+		NmdStringDistance distance = new NmdStringDistance();
+		double sum = 0.0;
+		for (String word : materialWords) {
+			sum += (double) distance.minDistance(word, cardKeyWords);
+		}
+		return sum + ResolverSettings.descriptionLengthPenaltyCoefficient
+				* Math.abs(cardKeyWords.size() - materialWords.size());
+	}
+
+	private String randomDescription(Random random, int maxWords) {
+		StringBuilder description = new StringBuilder();
+		for (int i = random.nextInt(maxWords + 1); i > 0; i--) {
+			description.append(WORDS[random.nextInt(WORDS.length)]).append(" ");
+		}
+		return description.toString().trim();
+	}
+
+	private Set<String> words(String description) {
+		Set<String> res = new HashSet<String>();
+		for (String word : description.split(" ")) {
+			if (!word.isEmpty()) {
+				res.add(word);
+			}
+		}
+		return res;
+	}
+}
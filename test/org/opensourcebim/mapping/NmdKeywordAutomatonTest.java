@@ -0,0 +1,61 @@
+package org.opensourcebim.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NmdKeywordAutomatonTest {
+
+	@Test
+	public void testKeywordsAreFoundAnywhereInText() {
+		NmdKeywordAutomaton automaton = new NmdKeywordAutomaton(Arrays.asList("steen", "beton", "hout"));
+		assertTrue(automaton.occursIn("kalkzandsteenwand"));
+		assertTrue(automaton.occursIn("betonvloer"));
+		assertTrue(automaton.occursIn("vurenhout"));
+		assertFalse(automaton.occursIn("staal"));
+		assertFalse(automaton.occursIn("stee"));
+	}
+
+	@Test
+	public void testKeywordsAreFoundThroughFailureStates() {
+		NmdKeywordAutomaton automaton = new NmdKeywordAutomaton(Arrays.asList("he", "she", "hers", "ahx"));
+		assertTrue(automaton.occursIn("ushe"));
+		assertTrue(automaton.occursIn("ahe"));
+		assertFalse(automaton.occursIn("ahs"));
+	}
+
+	@Test
+	public void testEmptyKeywordSetMatchesNothing() {
+		assertFalse(new NmdKeywordAutomaton(new ArrayList<String>()).occursIn("beton"));
+	}
+
+	@Test
+	public void testAutomatonEqualsContainsOnRandomWords() {
+		Random random = new Random(42);
+		List<String> keyWords = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			keyWords.add(randomWord(random, 2 + random.nextInt(4)));
+		}
+		NmdKeywordAutomaton automaton = new NmdKeywordAutomaton(keyWords);
+
+		for (int i = 0; i < 2000; i++) {
+			String word = randomWord(random, random.nextInt(12));
+			assertEquals(keyWords.stream().anyMatch(word::contains), automaton.occursIn(word));
+		}
+	}
+
+	private static String randomWord(Random random, int length) {
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			word.append((char) ('a' + random.nextInt(6)));
+		}
+		return word.toString();
+	}
+}
@@ -0,0 +1,60 @@
+package org.opensourcebim.mapping;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public class NmdStringDistanceTest {
+
+	@Test
+	public void testDistanceOfKnownWords() {
+		NmdStringDistance distance = new NmdStringDistance();
+		assertEquals(3, distance.distance("kitten", "sitting"));
+		assertEquals(0, distance.distance("beton", "beton"));
+		assertEquals(5, distance.distance("beton", ""));
+		assertEquals(4, distance.distance("", "hout"));
+	}
+
+	@Test
+	public void testMinDistanceIsSmallestDistanceToAnyWord() {
+		NmdStringDistance distance = new NmdStringDistance();
+		assertEquals(1, distance.minDistance("beton", Arrays.asList("staal", "betons", "hout")));
+		assertEquals(5, distance.minDistance("beton", new ArrayList<String>()));
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testDistancesEqualLevenshteinDistance() {
+		Random random = new Random(7);
+		NmdStringDistance distance = new NmdStringDistance();
+		for (int i = 0; i < 2000; i++) {
+			// include patterns that are too long or not ascii for the bit parallel variant
+			String pattern = randomWord(random, random.nextInt(i % 10 == 0 ? 80 : 12), i % 7 == 0);
+			List<String> words = new ArrayList<String>();
+			int min = Integer.MAX_VALUE;
+			for (int j = 0; j < 5; j++) {
+				String word = randomWord(random, random.nextInt(i % 10 == 0 ? 80 : 12), j == 0 && i % 5 == 0);
+				words.add(word);
+				int expected = StringUtils.getLevenshteinDistance(pattern, word);
+				assertEquals(expected, distance.distance(pattern, word));
+				min = Math.min(min, expected);
+			}
+			assertEquals(min, distance.minDistance(pattern, words));
+		}
+	}
+
+	private static String randomWord(Random random, int length, boolean includeNonAscii) {
+		String alphabet = includeNonAscii ? "abce\u00eb\u00e9" : "abcde";
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return word.toString();
+	}
+}
@@ -0,0 +1,81 @@
+package org.opensourcebim.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensourcebim.mapping.NmdTextTokenizer.Tokens;
+
+public class NmdTextTokenizerTest {
+
+	private NmdTextTokenizer tokenizer;
+	private String splitChars;
+
+	@Before
+	public void setUp() throws Exception {
+		tokenizer = new NmdTextTokenizer();
+		splitChars = ResolverSettings.splitChars;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ResolverSettings.splitChars = splitChars;
+	}
+
+	@Test
+	public void testWordsAreSplitAndNormalized() {
+		Tokens tokens = tokenizer.tokenize("Baksteen-Muur_200mm, kalkZandsteen;a:b3c beton");
+		assertEquals(new HashSet<String>(Arrays.asList("baksteen", "muur", "kalkzandsteen", "beton")),
+				tokens.getWords());
+	}
+
+	@Test
+	public void testNlsfbCodesAreFoundWithoutOverlap() {
+		Tokens tokens = tokenizer.tokenize("wand 21.12.34 en 22.11, 1.23");
+		assertEquals(new HashSet<String>(Arrays.asList("21.12", "22.11")), tokens.getNlsfbCodes());
+		assertTrue(tokenizer.tokenize("no codes").getNlsfbCodes().isEmpty());
+	}
+
+	@Test
+	public void testTokensAreCachedPerText() {
+		assertSame(tokenizer.tokenize("baksteen muur"), tokenizer.tokenize(new String("baksteen muur")));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedTokensAreEvicted() {
+		NmdTextTokenizer small = new NmdTextTokenizer(2);
+		Tokens wall = small.tokenize("baksteen muur");
+		Tokens floor = small.tokenize("beton vloer");
+		assertSame(wall, small.tokenize("baksteen muur"));
+		small.tokenize("gipswand");
+
+		assertSame(wall, small.tokenize("baksteen muur"));
+		assertNotSame(floor, small.tokenize("beton vloer"));
+	}
+
+	@Test
+	public void testUncachedTokensDoNotFillTheCache() {
+		NmdTextTokenizer small = new NmdTextTokenizer(1);
+		Tokens wall = small.tokenize("baksteen muur");
+		assertEquals(wall.getWords(), small.tokenizeUncached("baksteen muur").getWords());
+		assertNotSame(small.tokenizeUncached("beton vloer"), small.tokenizeUncached("beton vloer"));
+
+		assertSame(wall, small.tokenize("baksteen muur"));
+	}
+
+	@Test
+	public void testChangedSplitCharactersAreApplied() {
+		assertEquals(new HashSet<String>(Arrays.asList("baksteenmuur", "beton")),
+				tokenizer.tokenize("baksteen/muur beton").getWords());
+		ResolverSettings.splitChars = "/";
+		assertEquals(new HashSet<String>(Arrays.asList("baksteen", "muurbeton")),
+				tokenizer.tokenize("baksteen/muur beton").getWords());
+	}
+}